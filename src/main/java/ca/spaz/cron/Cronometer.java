@@ -142,7 +142,7 @@ public class Cronometer extends JFrame implements MRJQuitHandler, MRJAboutHandle
     private void makeAutoSaveTimer() {
         Timer t = new Timer(6000 * 5, new ActionListener() {
             public void actionPerformed(ActionEvent e) {
-                UserManager.getCurrentUser().saveUserData();
+                UserDataSaver.requestSave(UserManager.getCurrentUser());
                 getDailySummary().refreshTime();
             }
         });
@@ -485,9 +485,18 @@ public class Cronometer extends JFrame implements MRJQuitHandler, MRJAboutHandle
             UserManager.setSubdirectory(args[0]);
         }
 
+        final long startTime = System.currentTimeMillis();
         final Cronometer cron = Cronometer.getInstance();
-        Datasources.initialize(null);
+        // load the food databases and the user's data in the background,
+        // while the main window is built
+        Datasources.start(new SplashWindow(
+                              ImageFactory.getInstance().loadImage("/img/apple-100x100.png"), TITLE));
         cron.initGUI();
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                Logger.debug("Main window ready in " + (System.currentTimeMillis() - startTime) + " msec");
+            }
+        });
 
         // Do not enable quit until application has completed loading.
         // Otherwise we risk crashes if the user tries to quit during loading.
@@ -24,6 +24,7 @@ import ca.spaz.cron.metrics.Metric;
 import ca.spaz.cron.user.User;
 import ca.spaz.cron.user.UserManager;
 import ca.spaz.gui.ErrorReporter;
+import ca.spaz.util.XMLWriter;
 
 
 public class ExportWizard extends JFrame {
@@ -317,11 +318,15 @@ public class ExportWizard extends JFrame {
             }
         });
 
-        sb.append("<foods>");
+        StringWriter foodsXML = new StringWriter();
+        XMLWriter xml = new XMLWriter(foodsXML);
+        xml.startElement("foods");
         for (FoodProxy fp : foods) {
-            sb.append(fp.getFood().toXML().toString());
+            fp.getFood().writeXML(xml, false);
         }
-        sb.append("</foods>");
+        xml.endElement();
+        xml.flush();
+        sb.append(foodsXML);
 
         if (importDiary.isSelected()) {
             if (user.getBiometricsHistory().getMetricsOfType("Weight").size() > 0) {
@@ -332,9 +337,14 @@ public class ExportWizard extends JFrame {
                 }
             }
 
-            sb.append(user.getFoodHistory().toXML());
-            sb.append(user.getBiometricsHistory().toXML());
-            sb.append(user.getNotesHistory().toXML());
+            StringWriter diaryXML = new StringWriter();
+            xml = new XMLWriter(diaryXML);
+            xml.setPrintNewLines(true);
+            user.getFoodHistory().writeXML(xml);
+            user.getBiometricsHistory().writeXML(xml);
+            user.getNotesHistory().writeXML(xml);
+            xml.flush();
+            sb.append(diaryXML);
         }
 
         sb.append("</import>");
@@ -343,6 +353,11 @@ public class ExportWizard extends JFrame {
     }
 
     public static void doExport() {
+        // the export reads every food and history, which are loaded at startup
+        if (!Datasources.isLoaded()) {
+            Cronometer.okDialog("Your foods and diary are still loading. Please try again in a moment.", "Export");
+            return;
+        }
         ExportWizard ex = new ExportWizard();
         ex.setVisible(true);
     }
@@ -4,7 +4,7 @@ import java.awt.Color;
 
 import ca.spaz.cron.foods.Food;
 
-public class CRDBFoods extends JarXMLFoodDataSource {
+public class CRDBFoods extends PackedFoodDataSource {
 
     private static final Color CRDB_COL = new Color(0x00, 0x00, 0x70);
 
@@ -1,55 +1,203 @@
 package ca.spaz.cron.datasource;
 
 import java.util.*;
+import java.util.concurrent.*;
 
+import ca.spaz.cron.datasource.NutrientQuery.Result;
 import ca.spaz.cron.user.User;
 import ca.spaz.cron.user.UserManager;
+import ca.spaz.util.Logger;
 import ca.spaz.util.ProgressListener;
 
 
 public class Datasources {
 
+    private static final int USER_FOODS_PROGRESS = 10;
+    private static final int CRDB_PROGRESS = 10;
+    private static final int USDA_PROGRESS = 50;
+    private static final int HISTORY_PROGRESS = 30;
+
     private static List sources;
 
     private static UserFoods userDataSource;
     private static USDAFoods usdaDataSource;
     private static CRDBFoods crdbDataSource;
 
+    private static List<Future> tasks;
+    private static ProgressListener listener;
+    private static int progress;
+    private static boolean loaded;
+    private static List<Runnable> loadedCallbacks = new ArrayList<Runnable>();
+
+    /**
+     * Load all datasources and the current user's data, returning once
+     * everything is loaded.
+     */
     public static void initialize(ProgressListener pl) {
-        sources = new ArrayList();
+        start(pl);
+        waitUntilLoaded();
+    }
+
+    /**
+     * Start loading the datasources and the current user's data on background
+     * threads, returning at once. The small user foods index is loaded before
+     * returning; the bundled databases and the user's histories load
+     * concurrently, and anything that needs one of them before it is ready
+     * waits for it.
+     * @param pl notified as each part finishes loading, from the loading threads
+     */
+    public static synchronized void start(ProgressListener pl) {
+        listener = pl;
+        progress = 0;
+        loaded = false;
         if (pl != null) {
             pl.progressStart();
         }
+        sources = new ArrayList();
+        tasks = new ArrayList<Future>();
+
         userDataSource = new UserFoods(UserManager.getCronometerDirectory());
+        long start = System.currentTimeMillis();
         userDataSource.initialize();
+        prepareRanking(userDataSource);
+        Logger.debug("User foods loaded in " + (System.currentTimeMillis() - start) + " msec");
         sources.add(userDataSource);
-        if (pl != null) {
-            pl.progress(25);
-        }
+        addProgress(USER_FOODS_PROGRESS);
 
         crdbDataSource = new CRDBFoods();
-        crdbDataSource.initialize();
         sources.add(crdbDataSource);
-        if (pl != null) {
-            pl.progress(30);
-        }
-
         usdaDataSource = new USDAFoods();
-        usdaDataSource.initialize();
         sources.add(usdaDataSource);
-        if (pl != null) {
-            pl.progress(90);
-            pl.progressFinish();
-        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(3, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Datasource Loader");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        tasks.add(executor.submit(new Loader(crdbDataSource, CRDB_PROGRESS)));
+        tasks.add(executor.submit(new Loader(usdaDataSource, USDA_PROGRESS)));
 
         // jump start lazy inits
-        User user = UserManager.getCurrentUser();
+        final User user = UserManager.getCurrentUser();
         if (user != null) {
-            user.initUserData();
+            tasks.add(executor.submit(new Runnable() {
+                public void run() {
+                    try {
+                        long start = System.currentTimeMillis();
+                        user.initUserData();
+                        Logger.debug("User data loaded in " + (System.currentTimeMillis() - start) + " msec");
+                    } finally {
+                        addProgress(HISTORY_PROGRESS);
+                    }
+                }
+            }));
+        } else {
+            addProgress(HISTORY_PROGRESS);
         }
-        if (pl != null) {
-            pl.progress(100);
-            pl.progressFinish();
+        executor.shutdown();
+    }
+
+    /**
+     * Initializes a bundled datasource in the background.
+     */
+    private static class Loader implements Runnable {
+        private JarXMLFoodDataSource source;
+        private int weight;
+
+        public Loader(JarXMLFoodDataSource source, int weight) {
+            this.source = source;
+            this.weight = weight;
+        }
+
+        public void run() {
+            try {
+                long start = System.currentTimeMillis();
+                source.initialize();
+                prepareRanking(source);
+                Logger.debug(source.getName() + " loaded in " + (System.currentTimeMillis() - start) + " msec");
+            } finally {
+                // count a failed source as done, so loading still finishes
+                addProgress(weight);
+            }
+        }
+    }
+
+    /**
+     * Compute the search ranking features of every food in a datasource
+     * while it loads, so the first search does not pay for them.
+     */
+    private static void prepareRanking(FoodDataSource source) {
+        List foods = source.getAllFoods();
+        for (int i = 0; i < foods.size(); i++) {
+            ((FoodProxy)foods.get(i)).getRank();
+        }
+    }
+
+    private static void addProgress(int amount) {
+        List<Runnable> callbacks;
+        synchronized (Datasources.class) {
+            progress += amount;
+            if (listener != null) {
+                listener.progress(progress);
+                if (progress >= 100) {
+                    listener.progressFinish();
+                    listener = null;
+                }
+            }
+            if (progress < 100 || loaded) {
+                return;
+            }
+            loaded = true;
+            callbacks = new ArrayList<Runnable>(loadedCallbacks);
+            loadedCallbacks.clear();
+        }
+        for (int i = 0; i < callbacks.size(); i++) {
+            callbacks.get(i).run();
+        }
+    }
+
+    /**
+     * See if everything started by <code>start()</code> has finished loading.
+     */
+    public static synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Run a task once everything started by <code>start()</code> has
+     * finished loading: on the loading thread that finished last, or at once
+     * if loading is already done.
+     * @param r the task to run
+     */
+    public static void whenLoaded(Runnable r) {
+        synchronized (Datasources.class) {
+            if (!loaded) {
+                loadedCallbacks.add(r);
+                return;
+            }
+        }
+        r.run();
+    }
+
+    /**
+     * Wait for everything started by <code>start()</code> to finish loading.
+     */
+    public static void waitUntilLoaded() {
+        List<Future> list;
+        synchronized (Datasources.class) {
+            list = new ArrayList<Future>(tasks);
+        }
+        for (int i = 0; i < list.size(); i++) {
+            try {
+                list.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                Logger.error("Error loading data", e);
+            }
         }
     }
 
@@ -103,4 +251,26 @@ public class Datasources {
         }
         return null;
     }
+
+    /**
+     * Run a nutrient query over every datasource with a nutrient matrix.
+     * User foods and recipes are not covered, as they have no matrix.
+     * @param query the query to run
+     * @return a <code>List</code> of <code>NutrientQuery.Result</code>s, best first
+     */
+    public static List query(NutrientQuery query) {
+        PriorityQueue<Result> heap = new PriorityQueue<Result>();
+        for (Iterator iter = sources.iterator(); iter.hasNext(); ) {
+            FoodDataSource fds = (FoodDataSource) iter.next();
+            if (fds instanceof PackedFoodDataSource) {
+                NutrientMatrix matrix = ((PackedFoodDataSource)fds).getNutrientMatrix();
+                if (matrix != null) {
+                    query.execute(fds, matrix, heap);
+                }
+            }
+        }
+        List results = new ArrayList(heap);
+        Collections.sort(results, Collections.reverseOrder());
+        return results;
+    }
 }
@@ -32,11 +32,22 @@ public interface FoodDataSource {
      * Retrieve a <code>List</code> of all foods in this particular Datasource.
      *
      * @todo finalize the needed parameters here.
-     * @param keys the keys to search on.  This searches with an AND relation.
+     * @param keys the keys to search on.  This searches with an AND relation, and
+     * each key matches any word in a food's description that starts with it.
      * @return a List of <code>Food</code> objects matching the criteria.
      */
     List findFoods(String[] keys);
 
+    /**
+     * Retrieve the foods matching the keys as <code>findFoods</code> does, but
+     * allowing for typing mistakes: a key that starts no word in any food's
+     * description instead matches words a few edits away from starting with it.
+     *
+     * @param keys the keys to search on, with an AND relation.
+     * @return a List of <code>Food</code> objects matching the criteria.
+     */
+    List findSimilarFoods(String[] keys);
+
     /**
      * Retrieve a list of all foods in this datasource.
      * @return a List of <code>Food</code> objects consisting of every food in the datasource.
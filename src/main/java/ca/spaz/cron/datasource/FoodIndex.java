@@ -0,0 +1,542 @@
+package ca.spaz.cron.datasource;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * An inverted index over food descriptions. Every description is broken into
+ * normalized word tokens, and each token maps to a sorted posting list of the
+ * ids of the foods containing it. A query term matches every token it is a
+ * prefix of, and multiple terms are combined with an AND relation by
+ * intersecting their posting lists, so a search never has to walk every food
+ * in the datasource.
+ *
+ * The index is built once when a datasource initializes, and mutable
+ * datasources keep it up to date as foods are added, edited and removed.
+ * Read-only datasources can instead load a precompiled copy of the index
+ * (see <code>FoodIndexCompiler</code>) in a single read.
+ *
+ * For typo tolerant searches, the distinct words are also indexed by their
+ * character trigrams. A misspelled term is matched by finding the words that
+ * share enough of its trigrams, then checking the edit distance to each of
+ * them. The trigram index is built on the first such search, and rebuilt
+ * after the words change.
+ */
+public class FoodIndex {
+
+    /**
+     * The resource name of a precompiled binary index.
+     */
+    public static final String BINARY_INDEX = "foods.bin";
+
+    private static final int MAGIC = 0x43524958; // "CRIX"
+    private static final int VERSION = 1;
+
+    private ArrayList<FoodProxy> proxies = new ArrayList<FoodProxy>(); // id to proxy
+    private ArrayList<String[]> tokens = new ArrayList<String[]>(); // id to indexed tokens
+    private HashMap<String, Integer> ids = new HashMap<String, Integer>(); // sourceID to id
+    private TreeMap<String, PostingList> postings = new TreeMap<String, PostingList>();
+    private ArrayList<Integer> freeIds = new ArrayList<Integer>(); // ids of removed foods, to reuse
+
+    private String[] words; // word id to word, for the trigram index
+    private HashMap<String, PostingList> trigrams; // trigram to ids of words containing it
+
+    public FoodIndex() {
+    }
+
+    public FoodIndex(Collection<FoodProxy> foods) {
+        Iterator<FoodProxy> iter = foods.iterator();
+        while (iter.hasNext()) {
+            add(iter.next());
+        }
+    }
+
+    /**
+     * Add a food to the index, replacing any earlier entry with the same sourceID.
+     * @param fp the food to index
+     */
+    public synchronized void add(FoodProxy fp) {
+        Integer old = ids.get(fp.getSourceID());
+        if (old != null) {
+            removeId(old.intValue());
+        }
+        String[] words = tokenize(fp.getDescription());
+        int id;
+        if (freeIds.isEmpty()) {
+            id = proxies.size();
+            proxies.add(fp);
+            tokens.add(words);
+        } else {
+            // reuse a removed food's slot, so edits don't grow the index
+            id = freeIds.remove(freeIds.size() - 1).intValue();
+            proxies.set(id, fp);
+            tokens.set(id, words);
+        }
+        ids.put(fp.getSourceID(), Integer.valueOf(id));
+        for (int i = 0; i < words.length; i++) {
+            PostingList list = postings.get(words[i]);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(words[i], list);
+                trigrams = null;
+            }
+            list.add(id);
+        }
+    }
+
+    /**
+     * Re-index a food after its description has changed.
+     * @param fp the modified food
+     */
+    public synchronized void update(FoodProxy fp) {
+        add(fp);
+    }
+
+    /**
+     * Remove a food from the index.
+     * @param fp the food to remove
+     */
+    public synchronized void remove(FoodProxy fp) {
+        Integer id = ids.remove(fp.getSourceID());
+        if (id != null) {
+            removeId(id.intValue());
+        }
+    }
+
+    private void removeId(int id) {
+        String[] words = tokens.get(id);
+        if (words == null) {
+            // loaded from a binary index, which does not record tokens per food
+            words = postings.keySet().toArray(new String[postings.size()]);
+        }
+        for (int i = 0; i < words.length; i++) {
+            PostingList list = postings.get(words[i]);
+            list.remove(id);
+            if (list.size() == 0) {
+                postings.remove(words[i]);
+                trigrams = null;
+            }
+        }
+        proxies.set(id, null);
+        tokens.set(id, null);
+        freeIds.add(Integer.valueOf(id));
+    }
+
+    /**
+     * Find all foods matching every one of the given search keys. Each key
+     * matches any description word that starts with it.
+     *
+     * @param keys the search keys, combined with an AND relation
+     * @return the matching foods, in index order
+     */
+    public synchronized List<FoodProxy> find(String[] keys) {
+        PostingList result = null;
+        for (int i = 0; i < keys.length; i++) {
+            String[] terms = tokenize(keys[i]);
+            for (int j = 0; j < terms.length; j++) {
+                PostingList matches = findPrefix(terms[j]);
+                result = (result == null) ? matches : result.intersect(matches);
+                if (result.size() == 0) {
+                    return new ArrayList<FoodProxy>();
+                }
+            }
+        }
+        ArrayList<FoodProxy> found = new ArrayList<FoodProxy>();
+        if (result == null) {
+            for (int id = 0; id < proxies.size(); id++) {
+                if (proxies.get(id) != null) {
+                    found.add(proxies.get(id));
+                }
+            }
+        } else {
+            for (int i = 0; i < result.size(); i++) {
+                found.add(proxies.get(result.get(i)));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Find all foods matching every one of the given search keys, allowing
+     * for typing mistakes. A key matches any description word that starts
+     * with it; a key that starts no word at all instead matches words that
+     * start within a few edits of it (one edit for keys of four to seven
+     * letters, two for longer keys).
+     *
+     * @param keys the search keys, combined with an AND relation
+     * @return the matching foods, in index order
+     */
+    public synchronized List<FoodProxy> findSimilar(String[] keys) {
+        PostingList result = null;
+        for (int i = 0; i < keys.length; i++) {
+            String[] terms = tokenize(keys[i]);
+            for (int j = 0; j < terms.length; j++) {
+                PostingList matches = findPrefix(terms[j]);
+                if (matches.size() == 0) {
+                    matches = findSimilarWords(terms[j]);
+                }
+                result = (result == null) ? matches : result.intersect(matches);
+                if (result.size() == 0) {
+                    return new ArrayList<FoodProxy>();
+                }
+            }
+        }
+        if (result == null) {
+            return getAll();
+        }
+        ArrayList<FoodProxy> found = new ArrayList<FoodProxy>();
+        for (int i = 0; i < result.size(); i++) {
+            found.add(proxies.get(result.get(i)));
+        }
+        return found;
+    }
+
+    /**
+     * Get every food in the index.
+     * @return the indexed foods, in index order
+     */
+    public synchronized List<FoodProxy> getAll() {
+        return find(new String[0]);
+    }
+
+    /**
+     * Union the posting lists of every token starting with the given prefix.
+     */
+    private PostingList findPrefix(String prefix) {
+        SortedMap<String, PostingList> range =
+            postings.subMap(prefix, prefix + Character.MAX_VALUE);
+        if (range.size() == 1) {
+            return range.values().iterator().next();
+        }
+        BitSet bits = new BitSet(proxies.size());
+        Iterator<PostingList> iter = range.values().iterator();
+        while (iter.hasNext()) {
+            PostingList list = iter.next();
+            for (int i = 0; i < list.size(); i++) {
+                bits.set(list.get(i));
+            }
+        }
+        PostingList union = new PostingList();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            union.add(id);
+        }
+        return union;
+    }
+
+    /**
+     * Union the posting lists of every word that starts within the allowed
+     * number of edits of a term. Candidate words are those sharing enough of
+     * the term's trigrams: each edit changes at most three of them.
+     */
+    private PostingList findSimilarWords(String term) {
+        int maxEdits = (term.length() < 4) ? 0 : (term.length() < 8) ? 1 : 2;
+        BitSet bits = new BitSet(proxies.size());
+        if (maxEdits > 0) {
+            prepareTrigrams();
+            String[] grams = getTrigrams(term);
+            int[] shared = new int[words.length];
+            for (int i = 0; i < grams.length; i++) {
+                PostingList list = trigrams.get(grams[i]);
+                if (list != null) {
+                    for (int j = 0; j < list.size(); j++) {
+                        shared[list.get(j)]++;
+                    }
+                }
+            }
+            int needed = Math.max(1, grams.length - 3 * maxEdits);
+            for (int w = 0; w < words.length; w++) {
+                if (shared[w] >= needed && prefixDistance(term, words[w], maxEdits) <= maxEdits) {
+                    PostingList list = postings.get(words[w]);
+                    for (int i = 0; i < list.size(); i++) {
+                        bits.set(list.get(i));
+                    }
+                }
+            }
+        }
+        PostingList union = new PostingList();
+        for (int id = bits.nextSetBit(0); id >= 0; id = bits.nextSetBit(id + 1)) {
+            union.add(id);
+        }
+        return union;
+    }
+
+    /**
+     * Index the distinct words by their trigrams, if not already done.
+     */
+    private void prepareTrigrams() {
+        if (trigrams != null) {
+            return;
+        }
+        words = postings.keySet().toArray(new String[postings.size()]);
+        trigrams = new HashMap<String, PostingList>();
+        for (int w = 0; w < words.length; w++) {
+            String[] grams = getTrigrams(words[w]);
+            for (int i = 0; i < grams.length; i++) {
+                PostingList list = trigrams.get(grams[i]);
+                if (list == null) {
+                    list = new PostingList();
+                    trigrams.put(grams[i], list);
+                }
+                list.add(w);
+            }
+        }
+    }
+
+    /**
+     * Get the distinct trigrams of a word, padded at the start so that the
+     * first letters count as much as the rest.
+     */
+    private static String[] getTrigrams(String word) {
+        String padded = "  " + word;
+        LinkedHashSet<String> grams = new LinkedHashSet<String>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            grams.add(padded.substring(i, i + 3));
+        }
+        return grams.toArray(new String[grams.size()]);
+    }
+
+    /**
+     * Get the fewest edits (insertions, deletions, substitutions or swaps of
+     * adjacent letters) that turn a term into the start of a word.
+     * @param max stop early once the distance is known to be more than this
+     * @return the distance, or more than <code>max</code>
+     */
+    static int prefixDistance(String term, String word, int max) {
+        int m = term.length();
+        int n = Math.min(word.length(), m + max);
+        int[] prev2 = new int[n + 1];
+        int[] prev = new int[n + 1];
+        int[] row = new int[n + 1];
+        for (int j = 0; j <= n; j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= m; i++) {
+            row[0] = i;
+            int best = row[0];
+            char c = term.charAt(i - 1);
+            for (int j = 1; j <= n; j++) {
+                int cost = (c == word.charAt(j - 1)) ? 0 : 1;
+                int d = Math.min(Math.min(row[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                if (i > 1 && j > 1 && c == word.charAt(j - 2)
+                        && term.charAt(i - 2) == word.charAt(j - 1)) {
+                    d = Math.min(d, prev2[j - 2] + 1);
+                }
+                row[j] = d;
+                best = Math.min(best, d);
+            }
+            if (best > max) {
+                return best;
+            }
+            int[] t = prev2;
+            prev2 = prev;
+            prev = row;
+            row = t;
+        }
+        // the term may end anywhere in the word
+        int dist = Integer.MAX_VALUE;
+        for (int j = 0; j <= n; j++) {
+            dist = Math.min(dist, prev[j]);
+        }
+        return dist;
+    }
+
+    /**
+     * Write the index in its compact binary form. The layout is a header, the
+     * food table (sourceID, description and deprecation flag, in id order), then
+     * the sorted token dictionary with the posting list for each token. Posting
+     * lists are stored as variable length deltas between successive ids.
+     * @param out the stream to write to
+     * @throws IOException
+     */
+    public synchronized void write(OutputStream out) throws IOException {
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+        int[] remap = new int[proxies.size()];
+        int count = 0;
+        for (int id = 0; id < proxies.size(); id++) {
+            remap[id] = (proxies.get(id) != null) ? count++ : -1;
+        }
+        dout.writeInt(MAGIC);
+        dout.writeInt(VERSION);
+        dout.writeInt(count);
+        for (int id = 0; id < proxies.size(); id++) {
+            FoodProxy fp = proxies.get(id);
+            if (fp != null) {
+                dout.writeUTF(fp.getSourceID());
+                dout.writeUTF(fp.getDescription());
+                dout.writeBoolean(fp.isDeprecated());
+            }
+        }
+        dout.writeInt(postings.size());
+        Iterator<Map.Entry<String, PostingList>> iter = postings.entrySet().iterator();
+        while (iter.hasNext()) {
+            Map.Entry<String, PostingList> entry = iter.next();
+            PostingList list = entry.getValue();
+            dout.writeUTF(entry.getKey());
+            writeVarInt(dout, list.size());
+            int last = 0;
+            for (int i = 0; i < list.size(); i++) {
+                writeVarInt(dout, remap[list.get(i)] - last);
+                last = remap[list.get(i)];
+            }
+        }
+        dout.flush();
+    }
+
+    /**
+     * Load an index previously written by <code>write()</code>. The whole
+     * stream is read in one go and decoded from memory.
+     * @param in the stream to read from
+     * @param source the datasource the indexed foods belong to
+     * @return the loaded index
+     * @throws IOException if the stream is not a valid binary index
+     */
+    public static FoodIndex read(InputStream in, FoodDataSource source) throws IOException {
+        DataInputStream din = new DataInputStream(
+            new ByteArrayInputStream(in.readAllBytes()));
+        if (din.readInt() != MAGIC || din.readInt() != VERSION) {
+            throw new IOException("Unrecognized food index format");
+        }
+        FoodIndex index = new FoodIndex();
+        int count = din.readInt();
+        index.proxies.ensureCapacity(count);
+        index.tokens.ensureCapacity(count);
+        for (int id = 0; id < count; id++) {
+            String sourceID = din.readUTF();
+            String description = din.readUTF();
+            FoodProxy fp = din.readBoolean()
+                           ? new DeprecatedFoodProxy(description, source, sourceID)
+                           : new FoodProxy(description, source, sourceID);
+            index.proxies.add(fp);
+            index.tokens.add(null);
+            index.ids.put(sourceID, Integer.valueOf(id));
+        }
+        int words = din.readInt();
+        for (int i = 0; i < words; i++) {
+            String word = din.readUTF();
+            int[] ids = new int[readVarInt(din)];
+            int last = 0;
+            for (int j = 0; j < ids.length; j++) {
+                last += readVarInt(din);
+                ids[j] = last;
+            }
+            index.postings.put(word, new PostingList(ids));
+        }
+        return index;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int val) throws IOException {
+        while ((val & ~0x7F) != 0) {
+            out.writeByte((val & 0x7F) | 0x80);
+            val >>>= 7;
+        }
+        out.writeByte(val);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int val = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            val |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return val;
+            }
+        }
+    }
+
+    /**
+     * Split text into its distinct lower-case words, where a word is any
+     * run of letters or digits.
+     * @param text the text to split
+     * @return the normalized tokens, in order of first appearance
+     */
+    public static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        LinkedHashSet<String> words = new LinkedHashSet<String>();
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = (i < text.length()) ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(Character.toLowerCase(c));
+            } else if (sb.length() > 0) {
+                words.add(sb.toString());
+                sb.setLength(0);
+            }
+        }
+        return words.toArray(new String[words.size()]);
+    }
+
+    /**
+     * A sorted, growable list of food ids.
+     */
+    static class PostingList {
+        private int[] ids;
+        private int size;
+
+        public PostingList() {
+            this.ids = new int[4];
+            this.size = 0;
+        }
+
+        public PostingList(int[] ids) {
+            this.ids = ids;
+            this.size = ids.length;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public int get(int i) {
+            return ids[i];
+        }
+
+        /**
+         * Add an id, keeping the list sorted. New ids are usually the
+         * largest yet, so they are appended; a reused id is inserted.
+         */
+        public void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+            }
+            if (size == 0 || ids[size - 1] < id) {
+                ids[size++] = id;
+                return;
+            }
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                return;
+            }
+            i = -i - 1;
+            System.arraycopy(ids, i, ids, i + 1, size - i);
+            ids[i] = id;
+            size++;
+        }
+
+        public void remove(int id) {
+            int i = Arrays.binarySearch(ids, 0, size, id);
+            if (i >= 0) {
+                System.arraycopy(ids, i + 1, ids, i, size - i - 1);
+                size--;
+            }
+        }
+
+        public PostingList intersect(PostingList other) {
+            PostingList res = new PostingList();
+            int i = 0, j = 0;
+            while (i < size && j < other.size) {
+                if (ids[i] < other.ids[j]) {
+                    i++;
+                } else if (ids[i] > other.ids[j]) {
+                    j++;
+                } else {
+                    res.add(ids[i]);
+                    i++;
+                    j++;
+                }
+            }
+            return res;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package ca.spaz.cron.datasource;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Compiles the plain text <code>foods.index</code> and <code>deprecated.index</code>
+ * files of a food database directory into a binary <code>FoodIndex</code>, so that
+ * the datasource can load its index without parsing the text files on every launch.
+ *
+ * Run by the build over each of the bundled databases:
+ * <pre>
+ *    java ca.spaz.cron.datasource.FoodIndexCompiler usda_sr28 crdb_005
+ * </pre>
+ */
+public class FoodIndexCompiler {
+
+    private File dir;
+
+    public FoodIndexCompiler(File dir) {
+        this.dir = dir;
+    }
+
+    public void compile() throws IOException {
+        TreeMap<String, FoodProxy> foods = new TreeMap<String, FoodProxy>();
+        readIndex(new File(dir, "foods.index"), foods, false);
+        readIndex(new File(dir, "deprecated.index"), foods, true);
+
+        // sorted by sourceID, so the binary food table is in id order
+        FoodIndex index = new FoodIndex(foods.values());
+        File file = new File(dir, FoodIndex.BINARY_INDEX);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            index.write(out);
+        } finally {
+            out.close();
+        }
+        System.out.println("Wrote " + foods.size() + " foods to " + file);
+    }
+
+    private void readIndex(File file, Map<String, FoodProxy> foods, boolean deprecated) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file)));
+        try {
+            String line = in.readLine();
+            while (line != null) {
+                String[] parts = line.split("\\|");
+                if (parts.length == 2) {
+                    FoodProxy fp = deprecated
+                                   ? new DeprecatedFoodProxy(parts[1], null, parts[0])
+                                   : new FoodProxy(parts[1], null, parts[0]);
+                    foods.put(parts[0], fp);
+                }
+                line = in.readLine();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        for (int i = 0; i < args.length; i++) {
+            new FoodIndexCompiler(new File(args[i])).compile();
+        }
+    }
+}
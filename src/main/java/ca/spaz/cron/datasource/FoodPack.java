@@ -0,0 +1,236 @@
+package ca.spaz.cron.datasource;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+import ca.spaz.cron.foods.*;
+
+/**
+ * A packed binary store of food records. All foods of a database live in a
+ * single file: a header naming the nutrient columns, an offset table keyed by
+ * sourceID, and one record per food holding its description, conversion
+ * factors, comment, measures and a fixed vector of nutrient amounts (one
+ * double per nutrient column, negative where there is no data).
+ *
+ * The file is held in memory, so loading a food is an offset lookup and a
+ * short sequential decode rather than an XML parse.
+ */
+public class FoodPack {
+
+    /**
+     * The resource name of a packed food store.
+     */
+    public static final String PACK_FILE = "foods.pack";
+
+    private static final int MAGIC = 0x43524650; // "CRFP"
+    private static final int VERSION = 1;
+
+    private byte[] data;
+    private int recordBase;
+    private HashMap<String, Integer> offsets = new HashMap<String, Integer>();
+    private int[] columns; // pack nutrient column to NutrientInfo index, or -1
+    private String[] ids; // sourceIDs in table order
+    private long checksum = -1;
+
+    private FoodPack() {
+    }
+
+    /**
+     * Read a packed food store into memory.
+     * @param in the stream to read from
+     * @return the loaded store
+     * @throws IOException if the stream is not a valid food pack
+     */
+    public static FoodPack read(InputStream in) throws IOException {
+        FoodPack pack = new FoodPack();
+        pack.data = in.readAllBytes();
+        DataInputStream din = new DataInputStream(new ByteArrayInputStream(pack.data));
+        if (din.readInt() != MAGIC || din.readInt() != VERSION) {
+            throw new IOException("Unrecognized food pack format");
+        }
+        pack.columns = new int[din.readInt()];
+        for (int i = 0; i < pack.columns.length; i++) {
+            NutrientInfo ni = NutrientInfo.getByName(din.readUTF());
+            pack.columns[i] = (ni != null) ? ni.getIndex() : -1;
+        }
+        int count = din.readInt();
+        pack.ids = new String[count];
+        for (int i = 0; i < count; i++) {
+            pack.ids[i] = din.readUTF();
+            pack.offsets.put(pack.ids[i], Integer.valueOf(din.readInt()));
+        }
+        pack.recordBase = pack.data.length - din.available();
+        return pack;
+    }
+
+    /**
+     * Get the number of foods in the store.
+     */
+    public int size() {
+        return offsets.size();
+    }
+
+    public boolean contains(String id) {
+        return offsets.containsKey(id);
+    }
+
+    /**
+     * Get the sourceIDs of all foods, in the order they are stored.
+     */
+    public String[] getSourceIDs() {
+        return ids;
+    }
+
+    /**
+     * Get a checksum of the store's contents, for validating data derived from it.
+     */
+    public synchronized long getChecksum() {
+        if (checksum < 0) {
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length);
+            checksum = crc.getValue();
+        }
+        return checksum;
+    }
+
+    /**
+     * Decode only the nutrient vector of a food, skipping the rest of its record.
+     * @param id the sourceID of the food
+     * @param amounts receives the amount of each nutrient, indexed by
+     *        <code>NutrientInfo.getIndex()</code>; negative where there is no data
+     * @return false if the food is not in the store
+     * @throws IOException if the record is corrupt
+     */
+    public boolean readNutrients(String id, double[] amounts) throws IOException {
+        DataInputStream in = openRecord(id);
+        if (in == null) {
+            return false;
+        }
+        in.readUTF();
+        in.skipBytes(3 * 8);
+        if (in.readBoolean()) {
+            in.readUTF();
+        }
+        int count = in.readUnsignedShort();
+        for (int i = 0; i < count; i++) {
+            in.readUTF();
+            in.skipBytes(2 * 8);
+        }
+        Arrays.fill(amounts, -1);
+        for (int i = 0; i < columns.length; i++) {
+            double val = in.readDouble();
+            if (columns[i] >= 0) {
+                amounts[columns[i]] = val;
+            }
+        }
+        return true;
+    }
+
+    private DataInputStream openRecord(String id) {
+        Integer offset = offsets.get(id);
+        if (offset == null) {
+            return null;
+        }
+        int start = recordBase + offset.intValue();
+        return new DataInputStream(new ByteArrayInputStream(data, start, data.length - start));
+    }
+
+    /**
+     * Decode a food from the store.
+     * @param id the sourceID of the food
+     * @return the food, or null if it is not in the store
+     * @throws IOException if the record is corrupt
+     */
+    public Food loadFood(String id) throws IOException {
+        DataInputStream in = openRecord(id);
+        if (in == null) {
+            return null;
+        }
+        Food f = new Food();
+        f.setDescription(in.readUTF());
+        f.setSourceUID(id);
+        f.setProteinConversionFactor(in.readDouble());
+        f.setLipidConversionFactor(in.readDouble());
+        f.setCarbConversionFactor(in.readDouble());
+        if (in.readBoolean()) {
+            f.appendComment(in.readUTF());
+        }
+        int count = in.readUnsignedShort();
+        List measures = new ArrayList(count + 1);
+        measures.add(Measure.GRAM);
+        for (int i = 0; i < count; i++) {
+            String description = in.readUTF();
+            double amount = in.readDouble();
+            double grams = in.readDouble();
+            measures.add(new Measure(amount, description, grams));
+        }
+        f.setMeasures(measures);
+        NutrientTable nutrients = f.getNutrients();
+        for (int i = 0; i < columns.length; i++) {
+            double val = in.readDouble();
+            if (columns[i] >= 0) {
+                nutrients.setAmount(columns[i], val);
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Write foods out as a packed store. Recipes are not supported, as their
+     * servings refer to other foods.
+     * @param out the stream to write to
+     * @param foods the <code>Food</code>s to store
+     * @throws IOException
+     */
+    public static void write(OutputStream out, List foods) throws IOException {
+        List nutrients = NutrientInfo.getGlobalList();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream rout = new DataOutputStream(records);
+        int[] offsets = new int[foods.size()];
+        for (int i = 0; i < foods.size(); i++) {
+            Food f = (Food)foods.get(i);
+            if (f instanceof Recipe) {
+                throw new IllegalArgumentException("Recipes can not be packed: " + f.getSourceUID());
+            }
+            offsets[i] = rout.size();
+            rout.writeUTF(f.getDescription());
+            rout.writeDouble(f.getProteinConversionFactor());
+            rout.writeDouble(f.getLipidConversionFactor());
+            rout.writeDouble(f.getCarbConversionFactor());
+            rout.writeBoolean(f.getComment() != null);
+            if (f.getComment() != null) {
+                rout.writeUTF(f.getComment());
+            }
+            List measures = new ArrayList(f.getMeasures());
+            measures.remove(Measure.GRAM);
+            rout.writeShort(measures.size());
+            for (int m = 0; m < measures.size(); m++) {
+                Measure measure = (Measure)measures.get(m);
+                rout.writeUTF(measure.getDescription());
+                rout.writeDouble(measure.getAmount());
+                rout.writeDouble(measure.getGrams());
+            }
+            for (int n = 0; n < nutrients.size(); n++) {
+                NutrientInfo ni = (NutrientInfo)nutrients.get(n);
+                rout.writeDouble(f.hasDataFor(ni) ? f.getNutrientAmount(ni) : -1);
+            }
+        }
+        rout.flush();
+
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+        dout.writeInt(MAGIC);
+        dout.writeInt(VERSION);
+        dout.writeInt(nutrients.size());
+        for (int n = 0; n < nutrients.size(); n++) {
+            dout.writeUTF(((NutrientInfo)nutrients.get(n)).getName());
+        }
+        dout.writeInt(foods.size());
+        for (int i = 0; i < foods.size(); i++) {
+            dout.writeUTF(((Food)foods.get(i)).getSourceUID());
+            dout.writeInt(offsets[i]);
+        }
+        records.writeTo(dout);
+        dout.flush();
+    }
+}
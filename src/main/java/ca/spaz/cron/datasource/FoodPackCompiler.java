@@ -0,0 +1,64 @@
+package ca.spaz.cron.datasource;
+
+import java.io.*;
+import java.util.*;
+
+import ca.spaz.cron.foods.Food;
+
+/**
+ * Converts a food database directory of individual XML food files into a
+ * single packed <code>FoodPack</code> store. Recipes are left out of the pack,
+ * as their servings refer to foods in other datasources, and continue to be
+ * loaded from their XML files.
+ *
+ * Run by the build over each of the bundled databases:
+ * <pre>
+ *    java ca.spaz.cron.datasource.FoodPackCompiler usda_sr28 crdb_005
+ * </pre>
+ */
+public class FoodPackCompiler {
+
+    private File dir;
+
+    public FoodPackCompiler(File dir) {
+        this.dir = dir;
+    }
+
+    public void compile() throws Exception {
+        File[] files = dir.listFiles(new FilenameFilter() {
+            public boolean accept(File d, String name) {
+                return name.endsWith(".xml");
+            }
+        });
+        Arrays.sort(files);
+        List foods = new ArrayList();
+        for (int i = 0; i < files.length; i++) {
+            InputStream in = new BufferedInputStream(new FileInputStream(files[i]));
+            Food f;
+            try {
+                f = XMLFoodLoader.loadFood(in, false);
+            } finally {
+                in.close();
+            }
+            if (f != null) {
+                String name = files[i].getName();
+                f.setSourceUID(name.substring(0, name.length() - 4));
+                foods.add(f);
+            }
+        }
+        File file = new File(dir, FoodPack.PACK_FILE);
+        OutputStream out = new FileOutputStream(file);
+        try {
+            FoodPack.write(out, foods);
+        } finally {
+            out.close();
+        }
+        System.out.println("Packed " + foods.size() + " foods into " + file);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (int i = 0; i < args.length; i++) {
+            new FoodPackCompiler(new File(args[i])).compile();
+        }
+    }
+}
@@ -1,8 +1,7 @@
 package ca.spaz.cron.datasource;
 
-import java.lang.ref.SoftReference;
-
-import ca.spaz.cron.foods.Food;
+import ca.spaz.cron.foods.*;
+import ca.spaz.util.LRUCache;
 
 /**
  * A lightweight proxy for a Food. Just the food description and the ability
@@ -11,12 +10,33 @@ import ca.spaz.cron.foods.Food;
  * @author Aaron Davidson
  */
 public class FoodProxy {
+    /**
+     * The default memory budget for loaded foods, in bytes.
+     */
+    public static final long DEFAULT_CACHE_SIZE = 16 * 1024 * 1024;
+
+    private static LRUCache<FoodProxy, Food> cache = new LRUCache<FoodProxy, Food>(
+        DEFAULT_CACHE_SIZE, new LRUCache.Weigher<FoodProxy, Food>() {
+            public long weigh(FoodProxy fp, Food f) {
+                return estimateSize(f);
+            }
+        });
+
+    private static LRUCache.Loader<FoodProxy, Food> loader = new LRUCache.Loader<FoodProxy, Food>() {
+        public Food load(FoodProxy fp) {
+            return fp.source.loadFood(fp.sourceID);
+        }
+    };
+
     private String description;
     private String sourceID;
     private FoodDataSource source;
-    private SoftReference food;
     private int references = 0;
 
+    // search ranking features, computed once by prepareRanking()
+    private int rank;
+    private volatile String sortKey;
+
     public FoodProxy() {
     }
 
@@ -49,20 +69,45 @@ public class FoodProxy {
         references++;
     }
 
+    public void removeReference() {
+        references--;
+    }
+
     public int getReferences() {
         return references;
     }
 
+    /**
+     * Get the full food, loading it if it is not in the shared food cache.
+     */
     public Food getFood() {
-        Food f = null;
-        if (food != null) {
-            f = (Food)food.get();
+        return cache.get(this, loader);
+    }
+
+    /**
+     * Get the cache of loaded foods shared by all proxies, to read its
+     * statistics or change its memory budget.
+     */
+    public static LRUCache<FoodProxy, Food> getFoodCache() {
+        return cache;
+    }
+
+    /**
+     * Roughly estimate the memory held by a loaded food, in bytes.
+     */
+    private static long estimateSize(Food f) {
+        long size = 64 + 16 + 8 * NutrientInfo.getGlobalList().size();
+        size += 64 * f.getMeasures().size();
+        if (f.getDescription() != null) {
+            size += 40 + 2 * f.getDescription().length();
         }
-        if (f == null) {
-            f = source.loadFood(sourceID);
-            food = new SoftReference(f);
+        if (f.getComment() != null) {
+            size += 40 + 2 * f.getComment().length();
         }
-        return f;
+        if (f instanceof Recipe) {
+            size += 48 * ((Recipe)f).getServings().size();
+        }
+        return size;
     }
 
     public String getDescription() {
@@ -74,6 +119,7 @@ public class FoodProxy {
 
     public void setDescription(String description) {
         this.description = description;
+        sortKey = null;
     }
 
     public FoodDataSource getSource() {
@@ -82,6 +128,61 @@ public class FoodProxy {
 
     public void setSource(FoodDataSource source) {
         this.source = source;
+        sortKey = null;
+    }
+
+    /**
+     * Get the part of this food's search ranking that does not depend on the
+     * query or how often the food is used.
+     */
+    public int getRank() {
+        if (sortKey == null) {
+            prepareRanking();
+        }
+        return rank;
+    }
+
+    /**
+     * Get the lower-case description, for sorting by name and matching
+     * search terms without regard to case.
+     */
+    public String getSortKey() {
+        String key = sortKey;
+        if (key == null) {
+            key = prepareRanking();
+        }
+        return key;
+    }
+
+    /**
+     * Compute the ranking features from the description, source and
+     * deprecation, so that ranking a search hit is simple arithmetic.
+     */
+    private String prepareRanking() {
+        String desc = getDescription();
+        int r = 100; // base score, so we don't go negative
+
+        // I hate how USDA is full of babyfoods. Come on, really.
+        if (desc.startsWith("Babyfood")) {
+            r -= 100;
+        }
+
+        if (source != null && source == Datasources.getUserFoods()) {
+            r += 100;
+        } else if (source != null && source == Datasources.getCRDBFoods()) {
+            r += 50;
+        }
+
+        // penalize longer strings. We're usually searching for short, simple foods.
+        r -= 3 * desc.length();
+
+        if (isDeprecated()) {
+            r -= 200;
+        }
+        rank = r;
+        String key = desc.toLowerCase();
+        sortKey = key; // written last, so a key always follows its rank
+        return key;
     }
 
     public String getSourceID() {
@@ -2,6 +2,7 @@ package ca.spaz.cron.datasource;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 
 import ca.spaz.cron.Cronometer;
 import ca.spaz.cron.foods.Food;
@@ -11,24 +12,74 @@ import ca.spaz.util.Logger;
 public abstract class JarXMLFoodDataSource implements FoodDataSource {
 
     private HashMap map; // maps sourceID to FoodProxy
+    private FoodIndex index; // word index over food descriptions
+    private CountDownLatch initialized = new CountDownLatch(1);
 
     public abstract String getBaseName();
 
+    /**
+     * Load the food index. This may run on a background thread; until it is
+     * done, lookups and searches on this datasource wait for it.
+     */
     public void initialize() {
         try {
-            loadIndex();
-            loadDeprecatedIndex();
+            if (!loadBinaryIndex()) {
+                loadIndex();
+                loadDeprecatedIndex();
+                index = new FoodIndex(map.values());
+            }
             Logger.debug("Loaded " + map.size() + " foods.");
         } catch (IOException e) {
             Logger.error("Error Initliazing DataSource", e);
             ErrorReporter.showError("Error Initliazing DataSource", e, Cronometer.getInstance());
+        } finally {
+            initialized.countDown();
+        }
+    }
+
+    /**
+     * See if the food index has been loaded, without waiting for it.
+     */
+    public boolean isInitialized() {
+        return initialized.getCount() == 0;
+    }
+
+    private void waitForIndex() {
+        try {
+            initialized.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
     }
 
-    private InputStream getStream(String name) {
+    protected InputStream getStream(String name) {
         return getClass().getResourceAsStream("/" + getBaseName() + "/" + name);
     }
 
+    /**
+     * Load the precompiled binary index if the build produced one.
+     * @return true if the binary index was found and loaded
+     */
+    private boolean loadBinaryIndex() throws IOException {
+        InputStream in = getStream(FoodIndex.BINARY_INDEX);
+        if (in == null) {
+            return false;
+        }
+        Logger.debug("Loading binary index...");
+        try {
+            index = FoodIndex.read(in, this);
+        } finally {
+            in.close();
+        }
+        map = new HashMap();
+        Iterator iter = index.getAll().iterator();
+        while (iter.hasNext()) {
+            FoodProxy fp = (FoodProxy)iter.next();
+            map.put(fp.getSourceID(), fp);
+        }
+        return true;
+    }
+
     private void loadIndex() throws IOException {
         Logger.debug("Loading index...");
         InputStream in = getStream("foods.index");
@@ -79,30 +130,23 @@ public abstract class JarXMLFoodDataSource implements FoodDataSource {
     }
 
     public FoodProxy getFoodProxy(String id) {
-        return (FoodProxy)map.get(id);
+        waitForIndex();
+        return map == null ? null : (FoodProxy)map.get(id);
     }
 
     public List findFoods(String[] keys) {
-        ArrayList results = new ArrayList();
-        Iterator iter = map.values().iterator();
-        while (iter.hasNext()) {
-            FoodProxy food = (FoodProxy)iter.next();
-            String desc = food.getDescription().toUpperCase();
-            boolean match = true;
-            for (int i = 0; match && i < keys.length; i++) {
-                if (desc.indexOf(keys[i].toUpperCase()) == -1) {
-                    match = false;
-                }
-            }
-            if (match) {
-                results.add(food);
-            }
-        }
-        return results;
+        waitForIndex();
+        return index == null ? new ArrayList() : index.find(keys);
+    }
+
+    public List findSimilarFoods(String[] keys) {
+        waitForIndex();
+        return index == null ? new ArrayList() : index.findSimilar(keys);
     }
 
     public List getAllFoods() {
-        return new ArrayList(map.values());
+        waitForIndex();
+        return map == null ? new ArrayList() : new ArrayList(map.values());
     }
 
     public List getFoodGroups() {
@@ -111,7 +155,11 @@ public abstract class JarXMLFoodDataSource implements FoodDataSource {
 
     public void close() { }
 
+    /**
+     * A datasource still loading counts as available; one that failed to
+     * load does not.
+     */
     public boolean isAvailable() {
-        return map != null;
+        return initialized.getCount() > 0 || map != null;
     }
 }
@@ -0,0 +1,181 @@
+package ca.spaz.cron.datasource;
+
+import java.io.*;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.List;
+
+import ca.spaz.cron.foods.NutrientInfo;
+
+/**
+ * A read-only, memory-mapped matrix of the nutrient amounts (per 100g) of every
+ * food in a packed database. The matrix is stored column by column, one
+ * contiguous column of doubles per nutrient, so scanning a nutrient across the
+ * whole database is a sequential read that never builds a <code>Food</code>.
+ * Missing data is stored as <code>NaN</code>.
+ *
+ * The matrix file is derived from a <code>FoodPack</code> and written to a local
+ * cache file on first use, since resources inside a jar can not be mapped.
+ */
+public class NutrientMatrix {
+
+    private static final int MAGIC = 0x4352584D; // "CRXM"
+    private static final int VERSION = 1;
+
+    private String[] ids; // row to sourceID
+    private int[] columns; // NutrientInfo index to matrix column, or -1
+    private DoubleBuffer data;
+
+    private NutrientMatrix() {
+    }
+
+    /**
+     * Get the number of foods (rows) in the matrix.
+     */
+    public int getFoodCount() {
+        return ids.length;
+    }
+
+    /**
+     * Get the sourceID of the food in the given row.
+     */
+    public String getSourceID(int row) {
+        return ids[row];
+    }
+
+    /**
+     * See if the matrix holds a column for the given nutrient.
+     */
+    public boolean hasColumn(NutrientInfo ni) {
+        return ni != null && columns[ni.getIndex()] >= 0;
+    }
+
+    /**
+     * Get the amount of a nutrient in 100g of a food.
+     * @param row the food's row
+     * @param ni the nutrient to look up
+     * @return the amount, or <code>NaN</code> if there is no data
+     */
+    public double getAmount(int row, NutrientInfo ni) {
+        int col = columns[ni.getIndex()];
+        if (col < 0) {
+            return Double.NaN;
+        }
+        return data.get(col * ids.length + row);
+    }
+
+    /**
+     * Open a previously created matrix file.
+     * @param file the matrix file
+     * @param checksum the checksum of the food pack it must have been derived from
+     * @return the mapped matrix, or null if the file is missing, out of date
+     *    or cut short
+     * @throws IOException
+     */
+    public static NutrientMatrix open(File file, long checksum) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        NutrientMatrix matrix = new NutrientMatrix();
+        int dataOffset;
+        int width;
+        DataInputStream in = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != checksum) {
+                return null;
+            }
+            dataOffset = in.readInt();
+            matrix.columns = new int[NutrientInfo.getGlobalList().size()];
+            Arrays.fill(matrix.columns, -1);
+            width = in.readInt();
+            for (int i = 0; i < width; i++) {
+                NutrientInfo ni = NutrientInfo.getByName(in.readUTF());
+                if (ni != null) {
+                    matrix.columns[ni.getIndex()] = i;
+                }
+            }
+            matrix.ids = new String[in.readInt()];
+            for (int i = 0; i < matrix.ids.length; i++) {
+                matrix.ids[i] = in.readUTF();
+            }
+        } finally {
+            in.close();
+        }
+        long length = (long)width * matrix.ids.length * 8;
+        if (file.length() < dataOffset + length) {
+            return null;
+        }
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            matrix.data = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, length).asDoubleBuffer();
+        } finally {
+            channel.close(); // the mapping stays valid
+        }
+        return matrix;
+    }
+
+    /**
+     * Build a matrix file from a food pack, and open it. The file is written
+     * to a temporary file first and renamed into place, so a crash while
+     * writing never leaves a matrix file cut short.
+     * @param file the matrix file to write
+     * @param pack the foods to put in the matrix
+     * @return the mapped matrix
+     * @throws IOException
+     */
+    public static NutrientMatrix create(File file, FoodPack pack) throws IOException {
+        List nutrients = NutrientInfo.getGlobalList();
+        String[] ids = pack.getSourceIDs();
+        int width = nutrients.size();
+
+        // decode every food's nutrient vector, then transpose into columns
+        double[] values = new double[width * ids.length];
+        double[] amounts = new double[width];
+        for (int row = 0; row < ids.length; row++) {
+            pack.readNutrients(ids[row], amounts);
+            for (int col = 0; col < width; col++) {
+                values[col * ids.length + row] = amounts[col] < 0 ? Double.NaN : amounts[col];
+            }
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        DataOutputStream hout = new DataOutputStream(header);
+        for (int col = 0; col < width; col++) {
+            hout.writeUTF(((NutrientInfo)nutrients.get(col)).getName());
+        }
+        hout.writeInt(ids.length);
+        for (int row = 0; row < ids.length; row++) {
+            hout.writeUTF(ids[row]);
+        }
+        hout.flush();
+        int dataOffset = 4 + 4 + 8 + 4 + 4 + header.size();
+        int padding = (8 - dataOffset % 8) % 8;
+        dataOffset += padding;
+
+        File tempFile = new File(file.getParentFile(), file.getName() + ".tmp");
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(tempFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(pack.getChecksum());
+            out.writeInt(dataOffset);
+            out.writeInt(width);
+            header.writeTo(out);
+            out.write(new byte[padding]);
+            for (int i = 0; i < values.length; i++) {
+                out.writeDouble(values[i]);
+            }
+        } finally {
+            out.close();
+        }
+        file.delete();
+        if (!tempFile.renameTo(file)) {
+            tempFile.delete();
+            throw new IOException("Could not rename " + tempFile + " to " + file);
+        }
+        return open(file, pack.getChecksum());
+    }
+}
@@ -0,0 +1,182 @@
+package ca.spaz.cron.datasource;
+
+import java.util.*;
+
+import ca.spaz.cron.foods.NutrientInfo;
+
+/**
+ * A database-wide query over food nutrient content, run against the
+ * <code>NutrientMatrix</code> of each packed datasource. Foods can be filtered
+ * by nutrient ranges, ranked by a nutrient (optionally relative to another,
+ * such as magnesium per calorie), and projected onto a set of nutrients.
+ * All amounts are per 100g of food.
+ *
+ * For example, the top 50 foods by magnesium per calorie:
+ * <pre>
+ *    NutrientQuery q = new NutrientQuery();
+ *    q.setRanking(NutrientInfo.getByName("Magnesium"), NutrientInfo.getByName("Energy"), true);
+ *    q.addFilter(NutrientInfo.getByName("Energy"), 1, Double.MAX_VALUE);
+ *    q.setLimit(50);
+ *    List results = Datasources.query(q);
+ * </pre>
+ */
+public class NutrientQuery {
+
+    private List<NutrientInfo> filterNutrients = new ArrayList<NutrientInfo>();
+    private List<double[]> filterRanges = new ArrayList<double[]>();
+    private List<NutrientInfo> projection = new ArrayList<NutrientInfo>();
+    private NutrientInfo rankBy;
+    private NutrientInfo rankPer;
+    private boolean descending = true;
+    private boolean includeDeprecated = false;
+    private int limit = 50;
+
+    /**
+     * Only match foods with an amount of the nutrient in [min, max].
+     * Foods with no data for the nutrient never match.
+     */
+    public void addFilter(NutrientInfo ni, double min, double max) {
+        filterNutrients.add(ni);
+        filterRanges.add(new double[] { min, max });
+    }
+
+    /**
+     * Rank matching foods by a nutrient.
+     * @param ni the nutrient to rank by
+     * @param per if not null, rank by the ratio of <code>ni</code> to this nutrient
+     * @param descending true to put the largest values first
+     */
+    public void setRanking(NutrientInfo ni, NutrientInfo per, boolean descending) {
+        this.rankBy = ni;
+        this.rankPer = per;
+        this.descending = descending;
+    }
+
+    /**
+     * Include the amount of the given nutrient in each result.
+     */
+    public void addProjection(NutrientInfo ni) {
+        projection.add(ni);
+    }
+
+    /**
+     * Set the maximum number of results to return.
+     */
+    public void setLimit(int limit) {
+        this.limit = limit;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public void setIncludeDeprecated(boolean b) {
+        this.includeDeprecated = b;
+    }
+
+    /**
+     * Scan one datasource's matrix, offering every match to the results heap.
+     * The heap keeps the best <code>limit</code> results, with the worst on top.
+     */
+    void execute(FoodDataSource source, NutrientMatrix matrix, PriorityQueue<Result> heap) {
+        if (limit <= 0) {
+            return;
+        }
+        for (int i = 0; i < filterNutrients.size(); i++) {
+            if (!matrix.hasColumn(filterNutrients.get(i))) {
+                return;
+            }
+        }
+        if (rankBy != null && (!matrix.hasColumn(rankBy) || (rankPer != null && !matrix.hasColumn(rankPer)))) {
+            return;
+        }
+        int rows = matrix.getFoodCount();
+        for (int row = 0; row < rows; row++) {
+            if (!matches(matrix, row)) {
+                continue;
+            }
+            double score = 0;
+            if (rankBy != null) {
+                score = matrix.getAmount(row, rankBy);
+                if (rankPer != null) {
+                    double per = matrix.getAmount(row, rankPer);
+                    score = (per > 0) ? score / per : Double.NaN;
+                }
+                if (Double.isNaN(score)) {
+                    continue;
+                }
+                if (!descending) {
+                    score = -score;
+                }
+            }
+            if (heap.size() >= limit && score <= heap.peek().score) {
+                continue;
+            }
+            FoodProxy fp = source.getFoodProxy(matrix.getSourceID(row));
+            if (fp == null || (fp.isDeprecated() && !includeDeprecated)) {
+                continue;
+            }
+            double[] values = new double[projection.size()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = matrix.getAmount(row, projection.get(i));
+            }
+            heap.add(new Result(fp, descending ? score : -score, score, values));
+            if (heap.size() > limit) {
+                heap.poll();
+            }
+        }
+    }
+
+    private boolean matches(NutrientMatrix matrix, int row) {
+        for (int i = 0; i < filterNutrients.size(); i++) {
+            double val = matrix.getAmount(row, filterNutrients.get(i));
+            double[] range = filterRanges.get(i);
+            if (!(val >= range[0] && val <= range[1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A single food matched by a query.
+     */
+    public static class Result implements Comparable<Result> {
+        private FoodProxy food;
+        private double value;
+        private double score; // value, negated for ascending rankings
+        private double[] projected;
+
+        private Result(FoodProxy food, double value, double score, double[] projected) {
+            this.food = food;
+            this.value = value;
+            this.score = score;
+            this.projected = projected;
+        }
+
+        public FoodProxy getFoodProxy() {
+            return food;
+        }
+
+        /**
+         * Get the ranking value of the food, or 0 for an unranked query.
+         */
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * Get the amounts of the projected nutrients, in the order they were added.
+         */
+        public double[] getProjection() {
+            return projected;
+        }
+
+        /**
+         * Orders results from worst to best.
+         */
+        public int compareTo(Result r) {
+            return Double.compare(score, r.score);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ca.spaz.cron.datasource;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import ca.spaz.cron.Cronometer;
+import ca.spaz.cron.foods.Food;
+import ca.spaz.cron.user.UserManager;
+import ca.spaz.gui.ErrorReporter;
+import ca.spaz.util.Logger;
+
+/**
+ * A read-only datasource whose foods are stored in a single packed
+ * <code>FoodPack</code> resource instead of one XML resource per food.
+ * The pack is read on the first food lookup. Foods missing from the pack,
+ * such as recipes, which can not be packed, fall back to the XML resources
+ * for databases that ship them.
+ *
+ * The pack also backs a <code>NutrientMatrix</code> for whole-database nutrient
+ * queries, which is cached in the cronometer directory.
+ */
+public abstract class PackedFoodDataSource extends JarXMLFoodDataSource {
+
+    private FoodPack pack;
+    private boolean packLoaded = false;
+    private NutrientMatrix matrix;
+    private boolean matrixLoaded = false;
+
+    private synchronized FoodPack getPack() {
+        if (!packLoaded) {
+            packLoaded = true;
+            InputStream in = getStream(FoodPack.PACK_FILE);
+            if (in != null) {
+                try {
+                    long start = System.currentTimeMillis();
+                    pack = FoodPack.read(in);
+                    in.close();
+                    Logger.debug("Loaded " + pack.size() + " packed foods in "
+                                 + (System.currentTimeMillis() - start) + " msec");
+                } catch (IOException e) {
+                    Logger.error("Error loading food pack", e);
+                    pack = null;
+                }
+            }
+        }
+        return pack;
+    }
+
+    /**
+     * Get the nutrient matrix of this datasource's foods, building its cache
+     * file if it is missing or out of date.
+     * @return the matrix, or null if this datasource has no food pack
+     */
+    public synchronized NutrientMatrix getNutrientMatrix() {
+        if (!matrixLoaded) {
+            matrixLoaded = true;
+            FoodPack pack = getPack();
+            if (pack != null) {
+                File dir = new File(UserManager.getCronometerDirectory(), "cache");
+                File file = new File(dir, getBaseName() + ".matrix");
+                try {
+                    matrix = NutrientMatrix.open(file, pack.getChecksum());
+                } catch (IOException e) {
+                    // an unreadable cache file is rebuilt below
+                    Logger.error("Error loading nutrient matrix", e);
+                    file.delete();
+                    matrix = null;
+                }
+                if (matrix == null) {
+                    try {
+                        long start = System.currentTimeMillis();
+                        dir.mkdirs();
+                        matrix = NutrientMatrix.create(file, pack);
+                        Logger.debug("Built nutrient matrix for " + getBaseName() + " in "
+                                     + (System.currentTimeMillis() - start) + " msec");
+                    } catch (IOException e) {
+                        Logger.error("Error building nutrient matrix", e);
+                        matrix = null;
+                    }
+                }
+            }
+        }
+        return matrix;
+    }
+
+    public Food loadFood(String id) {
+        FoodPack pack = getPack();
+        if (pack != null && pack.contains(id)) {
+            try {
+                Food food = pack.loadFood(id);
+                food.setDataSource(this);
+                food.setSourceUID(id);
+                return food;
+            } catch (IOException e) {
+                Logger.error("Error loading: " + id, e);
+                ErrorReporter.showError("Error loading: " + id, e, Cronometer.getInstance());
+                return null;
+            }
+        }
+        if (pack != null && !hasXMLFoods()) {
+            Logger.error("Food not found: " + id);
+            return null;
+        }
+        return super.loadFood(id);
+    }
+
+    /**
+     * See if the per-food XML resources are shipped alongside the pack, so
+     * that foods missing from the pack can still be loaded. Only databases
+     * with recipes need them, since recipes are left out of the pack.
+     */
+    protected boolean hasXMLFoods() {
+        return true;
+    }
+}
@@ -5,7 +5,7 @@ import java.awt.Color;
 import ca.spaz.cron.foods.Food;
 
 
-public class USDAFoods extends JarXMLFoodDataSource {
+public class USDAFoods extends PackedFoodDataSource {
 
 
     public String getZipFileName() {
@@ -24,6 +24,14 @@ public class USDAFoods extends JarXMLFoodDataSource {
         return getName();
     }
 
+    /**
+     * The USDA foods are all in the pack, and their XML files are left out of
+     * the jar (see the maven-jar-plugin excludes in pom.xml).
+     */
+    protected boolean hasXMLFoods() {
+        return false;
+    }
+
     public boolean isMutable() {
         return false;
     }
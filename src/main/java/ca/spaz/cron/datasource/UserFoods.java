@@ -5,7 +5,7 @@ import java.io.*;
 import java.util.*;
 
 import ca.spaz.cron.Cronometer;
-import ca.spaz.cron.foods.Food;
+import ca.spaz.cron.foods.*;
 import ca.spaz.gui.ErrorReporter;
 import ca.spaz.util.Logger;
 
@@ -18,6 +18,8 @@ public class UserFoods implements FoodDataSource {
 
     private int maxUID = 0;
     private HashMap<String, FoodProxy> map; // maps sourceID to FoodProxy
+    private FoodIndex index; // word index over food descriptions
+    private HashMap<String, Set<String>> usedBy; // maps sourceID to the recipes using it, built on first use
     private File userDir;
 
     public UserFoods(File dir) {
@@ -45,6 +47,7 @@ public class UserFoods implements FoodDataSource {
     private void loadIndex() throws IOException {
         Logger.debug("Loading index...");
         map = new HashMap<String, FoodProxy>();
+        index = new FoodIndex();
         File file = new File(userDir, FOODS_INDEX);
         BufferedReader in = new BufferedReader(new FileReader(file));
         String line = in.readLine();
@@ -58,6 +61,7 @@ public class UserFoods implements FoodDataSource {
                     maxUID = UID;
                 }
                 map.put(parts[0], food);
+                index.add(food);
             }
             line = in.readLine();
         }
@@ -96,22 +100,11 @@ public class UserFoods implements FoodDataSource {
     }
 
     public List<FoodProxy> findFoods(String[] keys) {
-        ArrayList<FoodProxy> results = new ArrayList<FoodProxy>();
-        Iterator iter = map.values().iterator();
-        while (iter.hasNext()) {
-            FoodProxy food = (FoodProxy)iter.next();
-            String desc = food.getDescription().toUpperCase();
-            boolean match = true;
-            for (int i = 0; match && i < keys.length; i++) {
-                if (desc.indexOf(keys[i].toUpperCase()) == -1) {
-                    match = false;
-                }
-            }
-            if (match) {
-                results.add(food);
-            }
-        }
-        return results;
+        return index.find(keys);
+    }
+
+    public List<FoodProxy> findSimilarFoods(String[] keys) {
+        return index.findSimilar(keys);
     }
 
     public List<FoodProxy> getAllFoods() {
@@ -139,6 +132,24 @@ public class UserFoods implements FoodDataSource {
     }
 
     public void updateFood(Food f) {
+        writeFood(f);
+        FoodProxy fp = getFoodProxy(f.getSourceUID());
+        assert (fp != null);
+        // the saved instance is the current one, even if the cache had reloaded the food
+        FoodProxy.getFoodCache().put(fp, f);
+        if (f.getDescription() == null || !f.getDescription().equals(fp.getDescription())) {
+            fp.setDescription(f.getDescription());
+            index.update(fp);
+            writeIndex();
+        }
+        if (usedBy != null) {
+            indexIngredients(f.getSourceUID(), f);
+        }
+        fireFoodModifiedEvent(f.getProxy());
+        updateRecipesUsing(f.getSourceUID());
+    }
+
+    private void writeFood(Food f) {
         File file = new File(userDir, f.getSourceUID() + ".xml");
         try {
             PrintStream ps = new PrintStream(
@@ -149,13 +160,112 @@ public class UserFoods implements FoodDataSource {
             Logger.error("Error writing food " + file, e);
             ErrorReporter.showError("Error writing food " + file, e, Cronometer.getInstance());
         }
-        FoodProxy fp = getFoodProxy(f.getSourceUID());
-        assert (fp != null);
-        if (f.getDescription() == null || !f.getDescription().equals(fp.getDescription())) {
-            fp.setDescription(f.getDescription());
-            writeIndex();
+    }
+
+    /**
+     * Recompute and save every recipe using a food, directly or through
+     * other recipes, so none keeps the food's old nutrients. Each recipe is
+     * recomputed once, after any recipes it uses, and listeners are told
+     * about all of them once they are saved.
+     */
+    private void updateRecipesUsing(String id) {
+        List<String> recipes = getRecipesUsing(id);
+        if (recipes.isEmpty()) {
+            return;
+        }
+        Logger.debug("Updating " + recipes.size() + " recipes using food " + id);
+        List<FoodProxy> updated = new ArrayList<FoodProxy>();
+        for (int i = 0; i < recipes.size(); i++) {
+            FoodProxy fp = getFoodProxy(recipes.get(i));
+            Food r = fp == null ? null : fp.getFood();
+            if (r instanceof Recipe) {
+                ((Recipe)r).recomputeNutrients();
+                writeFood(r);
+                updated.add(fp);
+            }
+        }
+        for (int i = 0; i < updated.size(); i++) {
+            fireFoodModifiedEvent(updated.get(i));
+        }
+    }
+
+    /**
+     * Get the recipes using a food, directly or through other recipes,
+     * ordered so that each recipe comes after any recipes it uses.
+     */
+    private List<String> getRecipesUsing(String id) {
+        List<String> order = new ArrayList<String>();
+        addRecipesUsing(id, new HashSet<String>(), order);
+        Collections.reverse(order);
+        return order;
+    }
+
+    private void addRecipesUsing(String id, Set<String> visited, List<String> order) {
+        Set<String> recipes = getUsedBy().get(id);
+        if (recipes == null) {
+            return;
+        }
+        Iterator<String> iter = recipes.iterator();
+        while (iter.hasNext()) {
+            String recipe = iter.next();
+            if (visited.add(recipe)) {
+                addRecipesUsing(recipe, visited, order);
+                order.add(recipe);
+            }
+        }
+    }
+
+    /**
+     * Get the index of which recipes use each food, loading every food to
+     * build it the first time.
+     */
+    private HashMap<String, Set<String>> getUsedBy() {
+        if (usedBy == null) {
+            usedBy = new HashMap<String, Set<String>>();
+            Iterator<String> iter = map.keySet().iterator();
+            while (iter.hasNext()) {
+                String id = iter.next();
+                Food f = loadFood(id);
+                if (f != null) {
+                    indexIngredients(id, f);
+                }
+            }
+            Logger.debug("Indexed recipe ingredients of " + map.size() + " foods.");
+        }
+        return usedBy;
+    }
+
+    /**
+     * Record which foods a recipe uses, replacing what it used before.
+     */
+    private void indexIngredients(String id, Food f) {
+        unindexIngredients(id);
+        if (!(f instanceof Recipe)) {
+            return;
+        }
+        List servings = ((Recipe)f).getServings();
+        for (int i = 0; i < servings.size(); i++) {
+            FoodProxy fp = ((Serving)servings.get(i)).getFoodProxy();
+            if (fp != null && fp.getSource() == this) {
+                Set<String> recipes = usedBy.get(fp.getSourceID());
+                if (recipes == null) {
+                    recipes = new HashSet<String>();
+                    usedBy.put(fp.getSourceID(), recipes);
+                }
+                recipes.add(id);
+            }
+        }
+    }
+
+    private void unindexIngredients(String id) {
+        Iterator<Set<String>> iter = usedBy.values().iterator();
+        while (iter.hasNext()) {
+            Set<String> recipes = iter.next();
+            recipes.remove(id);
+            if (recipes.isEmpty()) {
+                iter.remove();
+            }
         }
-        fireFoodModifiedEvent(f.getProxy());
     }
 
     public void addFood(Food f) {
@@ -164,6 +274,7 @@ public class UserFoods implements FoodDataSource {
         FoodProxy proxy = new FoodProxy(f);
         proxy.addReference();
         map.put(f.getSourceUID(), proxy);
+        index.add(proxy);
         updateFood(f);
         writeIndex();
         fireFoodAddedEvent(f.getProxy());
@@ -172,7 +283,14 @@ public class UserFoods implements FoodDataSource {
     public void removeFood(Food f) {
         File file = new File(userDir, f.getSourceUID() + ".xml");
         file.delete();
-        map.remove(f.getSourceUID());
+        FoodProxy proxy = map.remove(f.getSourceUID());
+        if (proxy != null) {
+            index.remove(proxy);
+            FoodProxy.getFoodCache().remove(proxy);
+        }
+        if (usedBy != null) {
+            unindexIngredients(f.getSourceUID());
+        }
         writeIndex();
         fireFoodDeletedEvent(f.getProxy());
     }
@@ -1,36 +1,61 @@
 package ca.spaz.cron.datasource;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
 import javax.xml.parsers.*;
 
 import org.w3c.dom.*;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
 
 import ca.spaz.cron.Cronometer;
 import ca.spaz.cron.foods.*;
 import ca.spaz.gui.ErrorReporter;
 import ca.spaz.util.Logger;
 import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLParsers;
 
 public class XMLFoodLoader {
 
     /**
-     * Create from XML InputStream
+     * Create from XML InputStream. The food is built directly from the parse
+     * events, without building a DOM first.
      * @param in
+     * @return the food, or null if the stream does not hold a food or recipe
      * @throws ParserConfigurationException
      * @throws IOException
      * @throws SAXException
      */
     public static Food loadFood(InputStream in) throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        Document d = db.parse(in);
-        Element e = d.getDocumentElement();
-        return loadFood(e);
+        return loadFood(in, true);
+    }
+
+    /**
+     * Create from XML InputStream, optionally skipping recipes without
+     * reading their servings.
+     * @param in
+     * @param recipes false to return null for a recipe
+     * @return the food, or null if the stream does not hold a food or an allowed recipe
+     * @throws ParserConfigurationException
+     * @throws IOException
+     * @throws SAXException
+     */
+    public static Food loadFood(InputStream in, boolean recipes) throws ParserConfigurationException, SAXException, IOException {
+        FoodHandler handler = new FoodHandler(recipes);
+        SAXParser parser = XMLParsers.acquireSAXParser();
+        try {
+            parser.parse(in, handler);
+        } catch (SAXException e) {
+            if (!handler.skipped) {
+                throw e;
+            }
+        } finally {
+            XMLParsers.release(parser);
+        }
+        return handler.food;
     }
 
     /**
@@ -127,4 +152,116 @@ public class XMLFoodLoader {
         }
         return f;
     }
+
+    /**
+     * A food or recipe being read, along with the serving being read inside
+     * it, if any.
+     */
+    private static class FoodState {
+        private Food food;
+        private List measures = new ArrayList();
+        private List servings = new ArrayList();
+        private Attributes serving;
+        private Food servingFood; // a food stored inside the serving
+    }
+
+    /**
+     * Builds a food from SAX events. Foods stored inside the servings of an
+     * exported recipe are read in turn, so a stack of foods is kept.
+     */
+    private static class FoodHandler extends DefaultHandler {
+        private Food food;
+        private LinkedList<FoodState> stack = new LinkedList<FoodState>();
+        private StringBuilder comment;
+        private boolean recipes;
+        private boolean skipped = false;
+
+        public FoodHandler(boolean recipes) {
+            this.recipes = recipes;
+        }
+
+        public void startElement(String uri, String localName, String qName, Attributes atts) throws SAXException {
+            FoodState state = stack.peek();
+            if (qName.equals("food") || qName.equals("recipe")) {
+                if (state == null && qName.equals("recipe") && !recipes) {
+                    skipped = true;
+                    throw new SAXException("Skipped recipe"); // stop reading
+                }
+                if (state == null ? food == null : state.serving != null) {
+                    stack.push(startFood(qName, atts));
+                }
+            } else if (state == null) {
+                return;
+            } else if (qName.equals("measure")) {
+                Measure measure = new Measure();
+                measure.setDescription(atts.getValue("name"));
+                measure.setAmount(Double.parseDouble(atts.getValue("amount")));
+                measure.setGrams(Double.parseDouble(atts.getValue("grams")));
+                state.measures.add(measure);
+            } else if (qName.equals("nutrient")) {
+                NutrientInfo ni = NutrientInfo.getByName(atts.getValue("name"));
+                if (ni != null) {
+                    state.food.setNutrientAmount(ni, Double.parseDouble(atts.getValue("amount")));
+                }
+            } else if (qName.equals("comments")) {
+                comment = new StringBuilder();
+            } else if (qName.equals("serving") && state.food instanceof Recipe) {
+                state.serving = new AttributesImpl(atts);
+                state.servingFood = null;
+            }
+        }
+
+        private FoodState startFood(String tag, Attributes atts) {
+            FoodState state = new FoodState();
+            state.food = tag.equals("recipe") ? new Recipe() : new Food();
+            state.food.setDescription(XMLNode.getString(atts, "name", ""));
+            state.food.setSourceUID(XMLNode.getString(atts, "uid", ""));
+            if (atts.getValue("pcf") != null) {
+                state.food.setProteinConversionFactor(XMLNode.getDouble(atts, "pcf"));
+            }
+            if (atts.getValue("lcf") != null) {
+                state.food.setLipidConversionFactor(XMLNode.getDouble(atts, "lcf"));
+            }
+            if (atts.getValue("ccf") != null) {
+                state.food.setCarbConversionFactor(XMLNode.getDouble(atts, "ccf"));
+            }
+            state.measures.add(Measure.GRAM);
+            return state;
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            if (comment != null) {
+                comment.append(ch, start, length);
+            }
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            FoodState state = stack.peek();
+            if (state == null) {
+                return;
+            }
+            if (qName.equals("comments") && comment != null) {
+                state.food.appendComment(comment.toString().trim());
+                comment = null;
+            } else if (qName.equals("serving") && state.serving != null) {
+                Serving s = new Serving();
+                s.load(state.serving, state.servingFood);
+                if (s.isLoaded()) {
+                    state.servings.add(s);
+                }
+                state.serving = null;
+            } else if (qName.equals("food") || qName.equals("recipe")) {
+                stack.pop();
+                state.food.setMeasures(state.measures);
+                if (state.food instanceof Recipe) {
+                    ((Recipe)state.food).addServings(state.servings);
+                }
+                if (stack.isEmpty()) {
+                    food = state.food;
+                } else {
+                    stack.peek().servingFood = state.food;
+                }
+            }
+        }
+    }
 }
@@ -14,6 +14,7 @@ public abstract class ZipXMLFoodDataSource implements FoodDataSource {
 
     private ZipFile zip; // the zip file backing store
     private HashMap map; // maps sourceID to FoodProxy
+    private FoodIndex index; // word index over food descriptions
 
     public abstract String getZipFileName();
 
@@ -22,6 +23,7 @@ public abstract class ZipXMLFoodDataSource implements FoodDataSource {
             zip = new ZipFile(getZipFileName());
             loadIndex();
             loadDeprecatedIndex();
+            index = new FoodIndex(map.values());
             Logger.debug("Loaded " + map.size() + " foods.");
         } catch (IOException e) {
             Logger.error("Error Initliazing DataSource", e);
@@ -89,22 +91,11 @@ public abstract class ZipXMLFoodDataSource implements FoodDataSource {
     }
 
     public List findFoods(String[] keys) {
-        ArrayList results = new ArrayList();
-        Iterator iter = map.values().iterator();
-        while (iter.hasNext()) {
-            FoodProxy food = (FoodProxy)iter.next();
-            String desc = food.getDescription().toUpperCase();
-            boolean match = true;
-            for (int i = 0; match && i < keys.length; i++) {
-                if (desc.indexOf(keys[i].toUpperCase()) == -1) {
-                    match = false;
-                }
-            }
-            if (match) {
-                results.add(food);
-            }
-        }
-        return results;
+        return index.find(keys);
+    }
+
+    public List findSimilarFoods(String[] keys) {
+        return index.findSimilar(keys);
     }
 
     public List getAllFoods() {
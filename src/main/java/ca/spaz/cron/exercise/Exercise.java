@@ -1,15 +1,18 @@
 package ca.spaz.cron.exercise;
 
+import java.io.IOException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.Date;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
 import ca.spaz.cron.records.Record;
 import ca.spaz.cron.user.UserManager;
 import ca.spaz.sql.SQLRow;
 import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLWriter;
 
 /**
  * Stores an amount and time of an exercise
@@ -57,15 +60,25 @@ public class Exercise implements Record {
         }
     }
 
-    public synchronized XMLNode toXML() {
-        XMLNode node = new XMLNode("exercise");
-        node.addAttribute("name", name);
-        node.addAttribute("minutes", minutes);
-        node.addAttribute("calories", calories);
+    public void load(Attributes atts, String text) {
+        this.name = atts.getValue("name");
+        setMinutes(XMLNode.getDouble(atts, "minutes"));
+        setCalories(XMLNode.getDouble(atts, "calories"));
+
+        if (atts.getValue("date") != null) {
+            setDate(new Date(XMLNode.getLong(atts, "date")));
+        }
+    }
+
+    public synchronized void writeXML(XMLWriter out) throws IOException {
+        out.startElement("exercise");
+        out.addAttribute("name", name);
+        out.addAttribute("minutes", minutes);
+        out.addAttribute("calories", calories);
         if (date != 0) {
-            node.addAttribute("date", date);
+            out.addAttribute("date", date);
         }
-        return node;
+        out.endElement();
     }
 
     /**
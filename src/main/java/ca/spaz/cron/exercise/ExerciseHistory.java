@@ -3,6 +3,7 @@ package ca.spaz.cron.exercise;
 import java.util.*;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
 import ca.spaz.cron.records.History;
 import ca.spaz.cron.records.Record;
@@ -24,6 +25,12 @@ public class ExerciseHistory extends History {
         return new Exercise(item);
     }
 
+    public Record loadUserEntry(Attributes atts, String text) {
+        Exercise entry = new Exercise();
+        entry.load(atts, text);
+        return entry;
+    }
+
     /**
      * Add a new record of a Serving to the history
      */
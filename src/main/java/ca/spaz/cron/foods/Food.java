@@ -1,11 +1,11 @@
 package ca.spaz.cron.foods;
 
-import java.io.PrintStream;
+import java.io.*;
 import java.util.*;
 
 import ca.spaz.cron.datasource.FoodDataSource;
 import ca.spaz.cron.datasource.FoodProxy;
-import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLWriter;
 
 public class Food {
     private String description;
@@ -146,48 +146,57 @@ public class Food {
         return "food";
     }
 
-    public XMLNode toXML(boolean export) {
-        return toXML();
+    public void writeXML(PrintStream out, boolean export) {
+        try {
+            XMLWriter xml = new XMLWriter(out);
+            writeXML(xml, export);
+            xml.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
-    public XMLNode toXML() {
-        XMLNode node = new XMLNode(getTagName());
-        node.addAttribute("name", getDescription());
-        node.addAttribute("uid", getSourceUID());
-        node.addAttribute("pcf", getProteinConversionFactor());
-        node.addAttribute("fcf", getLipidConversionFactor());
-        node.addAttribute("ccf", getCarbConversionFactor());
+    /**
+     * Write the food to an XML stream.
+     * @param export if true, recipes also include their user foods
+     */
+    public void writeXML(XMLWriter out, boolean export) throws IOException {
+        out.startElement(getTagName());
+        out.addAttribute("name", getDescription());
+        out.addAttribute("uid", getSourceUID());
+        out.addAttribute("pcf", getProteinConversionFactor());
+        out.addAttribute("fcf", getLipidConversionFactor());
+        out.addAttribute("ccf", getCarbConversionFactor());
+        writeContents(out, export);
+        out.endElement();
+    }
+
+    /**
+     * Write the child elements of the food.
+     */
+    protected void writeContents(XMLWriter out, boolean export) throws IOException {
         if (comment != null) {
-            XMLNode cNode = new XMLNode("comments");
-            cNode.setText(comment);
-            node.addChild(cNode);
+            out.startElement("comments");
+            out.addText(comment);
+            out.endElement();
         }
-        List measures = getMeasures();
-        Iterator iter = measures.iterator();
+        Iterator iter = getMeasures().iterator();
         while (iter.hasNext()) {
             Measure m = (Measure)iter.next();
             if (m != Measure.GRAM) {
-                node.addChild(m.toXMLNode());
+                m.writeXML(out);
             }
         }
-
-        List nutrients = NutrientInfo.getGlobalList();
-        iter = nutrients.iterator();
+        iter = NutrientInfo.getGlobalList().iterator();
         while (iter.hasNext()) {
             NutrientInfo ni = (NutrientInfo)iter.next();
             if (hasDataFor(ni)) {
-                double val = getNutrientAmount(ni);
-                XMLNode niNode = new XMLNode("nutrient");
-                niNode.addAttribute("name", ni.getName());
-                niNode.addAttribute("amount", val);
-                node.addChild(niNode);
+                out.startElement("nutrient");
+                out.addAttribute("name", ni.getName());
+                out.addAttribute("amount", getNutrientAmount(ni));
+                out.endElement();
             }
         }
-        return node;
-    }
-
-    public void writeXML(PrintStream out, boolean export) {
-        toXML(export).write(out);
     }
 
     /**
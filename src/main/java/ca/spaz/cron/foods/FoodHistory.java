@@ -3,17 +3,27 @@ package ca.spaz.cron.foods;
 import java.util.*;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
-import ca.spaz.cron.datasource.FoodProxy;
+import ca.spaz.cron.datasource.*;
 import ca.spaz.cron.records.History;
 import ca.spaz.cron.records.Record;
+import ca.spaz.util.ToolBox;
 
 /**
  * The Serving history for a user.
  *
  * @author Aaron Davidson
  */
-public class FoodHistory extends History {
+public class FoodHistory extends History implements UserFoodsListener {
+
+    // nutrient totals by day number; not initialized here, as History loads
+    // entries before this class's fields would be set
+    private HashMap<Long, NutrientTotals> totals;
+    private HashMap<String, List> servingsByFood; // keyed by getFoodKey()
+    private NutrientSeries series; // running totals over all days, built on demand
+    private long changedFrom; // the earliest day changed since the series was updated
+    private boolean listening;
 
     public String getBaseName() {
         return "servings";
@@ -23,16 +33,30 @@ public class FoodHistory extends History {
         return "serving";
     }
 
+    /**
+     * Servings are all read up front, as every serving counts towards its
+     * food's references, which rank search results, and the servings of a
+     * food are looked up across the whole history.
+     */
+    protected boolean isLoadedLazily() {
+        return false;
+    }
+
     public Record loadUserEntry(Element item) {
         return new Serving(item);
     }
 
+    public Record loadUserEntry(Attributes atts, String text) {
+        Serving entry = new Serving();
+        entry.load(atts, text);
+        return entry;
+    }
+
     /**
      * Add a new record of a Serving to the history
      */
     public synchronized void addServing(Serving c) {
         addEntry(c);
-        c.getFoodProxy().addReference();
     }
 
     public synchronized List getConsumedOn(Date curDate) {
@@ -57,15 +81,213 @@ public class FoodHistory extends History {
         return consumed;
     }
 
+    /**
+     * Get every serving of a food, in the order they were filed.
+     */
     public synchronized List getServings(FoodProxy fp) {
-        ArrayList res = new ArrayList();
-        for (int i = 0; i < entries.size(); i++) {
-            Serving s = (Serving)entries.get(i);
-            if (s.getFoodProxy().equals(fp)) {
-                res.add(s);
+        List list = getServingsOf(fp);
+        if (list == null) {
+            return new ArrayList();
+        }
+        return new ArrayList(list);
+    }
+
+    /**
+     * Get the number of servings of a food in the history.
+     */
+    public synchronized int getTimesConsumed(FoodProxy fp) {
+        List list = getServingsOf(fp);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * Get the time of the latest serving of a food.
+     * @return the time, or null if the food was never eaten
+     */
+    public synchronized Date getLastConsumed(FoodProxy fp) {
+        List list = getServingsOf(fp);
+        if (list == null) {
+            return null;
+        }
+        Date last = null;
+        for (int i = 0; i < list.size(); i++) {
+            Date d = ((Serving)list.get(i)).getDate();
+            if (last == null || d.after(last)) {
+                last = d;
+            }
+        }
+        return last;
+    }
+
+    private List getServingsOf(FoodProxy fp) {
+        if (servingsByFood == null) {
+            return null;
+        }
+        return servingsByFood.get(getFoodKey(fp));
+    }
+
+    /**
+     * Foods are told apart by their source and their ID in it, as different
+     * proxies may stand for the same food.
+     */
+    private static String getFoodKey(FoodProxy fp) {
+        String source = fp.getSource() == null ? "" : fp.getSource().getName();
+        return source + ":" + fp.getSourceID();
+    }
+
+    /**
+     * Index the serving under its food, and count it as a reference to the
+     * food for ranking search results.
+     */
+    protected void entryAdded(Record entry, long day) {
+        FoodProxy fp = ((Serving)entry).getFoodProxy();
+        if (fp == null) {
+            return;
+        }
+        if (servingsByFood == null) {
+            servingsByFood = new HashMap<String, List>();
+        }
+        String key = getFoodKey(fp);
+        List list = servingsByFood.get(key);
+        if (list == null) {
+            list = new ArrayList();
+            servingsByFood.put(key, list);
+        }
+        list.add(entry);
+        fp.addReference();
+    }
+
+    protected void entryRemoved(Record entry, long day) {
+        FoodProxy fp = ((Serving)entry).getFoodProxy();
+        if (fp == null || servingsByFood == null) {
+            return;
+        }
+        String key = getFoodKey(fp);
+        List list = servingsByFood.get(key);
+        if (list == null) {
+            return;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == entry) {
+                list.remove(i);
+                fp.removeReference();
+                break;
             }
         }
-        return res;
+        if (list.isEmpty()) {
+            servingsByFood.remove(key);
+        }
+    }
+
+    /**
+     * Get the nutrient totals of the servings on a day. The totals are kept
+     * until the day's servings change or a food in them is edited,
+     * so every summary of the day shares one computation.
+     */
+    public synchronized NutrientTotals getTotalsOn(Date date) {
+        return getTotalsOnDay(ToolBox.getDayNumber(date));
+    }
+
+    private NutrientTotals getTotalsOnDay(long dayNumber) {
+        if (totals == null) {
+            totals = new HashMap<Long, NutrientTotals>();
+        }
+        if (!listening && Datasources.getUserFoods() != null) {
+            Datasources.getUserFoods().addUserFoodsListener(this);
+            listening = true;
+        }
+        Long day = Long.valueOf(dayNumber);
+        NutrientTotals t = totals.get(day);
+        if (t == null) {
+            t = new NutrientTotals(getEntriesOnDay(dayNumber));
+            totals.put(day, t);
+        }
+        return t;
+    }
+
+    /**
+     * Get the nutrient totals of the servings from the start day through the
+     * end day. Running totals over the whole history are kept, so any range
+     * is answered with one subtraction; after a change they are recomputed
+     * from the earliest changed day on, from the daily totals, of which only
+     * the changed days are recomputed.
+     * @param start a date on the first day
+     * @param end a date on the last day, inclusive
+     * @return the totals, which may be modified
+     */
+    public synchronized NutrientTotals getTotalsBetween(Date start, Date end) {
+        if (series != null && changedFrom != Long.MAX_VALUE) {
+            if (series.isEmpty() || changedFrom < series.getFirstDay()) {
+                series = null;
+            } else {
+                List<Long> days = getDaysFrom(changedFrom);
+                series.update(changedFrom, days, getTotalsOnDays(days));
+            }
+        }
+        if (series == null) {
+            List<Long> days = getDays();
+            series = new NutrientSeries(days, getTotalsOnDays(days));
+        }
+        changedFrom = Long.MAX_VALUE;
+        return series.getTotalsBetween(ToolBox.getDayNumber(start), ToolBox.getDayNumber(end));
+    }
+
+    private List<NutrientTotals> getTotalsOnDays(List<Long> days) {
+        List<NutrientTotals> dayTotals = new ArrayList<NutrientTotals>(days.size());
+        for (int i = 0; i < days.size(); i++) {
+            dayTotals.add(getTotalsOnDay(days.get(i).longValue()));
+        }
+        return dayTotals;
+    }
+
+    protected void entriesChanged(long day) {
+        if (day < 0) {
+            series = null;
+        } else if (series != null) {
+            changedFrom = Math.min(changedFrom, day);
+        }
+        if (totals == null) {
+            return;
+        }
+        if (day < 0) {
+            totals.clear();
+        } else {
+            totals.remove(Long.valueOf(day));
+        }
+    }
+
+    /**
+     * Only the days with servings of an edited food change. Recipes using
+     * the food are reported as modified too, so their days are found the
+     * same way.
+     */
+    private synchronized void foodChanged(FoodProxy fp) {
+        if (fp == null) {
+            // without the food, any day may have changed
+            entriesChanged(-1);
+            return;
+        }
+        List list = getServingsOf(fp);
+        if (list == null) {
+            return;
+        }
+        for (int i = 0; i < list.size(); i++) {
+            long day = getDayOf((Record)list.get(i));
+            if (day >= 0) {
+                entriesChanged(day);
+            }
+        }
+    }
+
+    public void userFoodAdded(FoodProxy fp) {
+    }
+
+    public void userFoodModified(FoodProxy fp) {
+        foodChanged(fp);
+    }
+
+    public void userFoodDeleted(FoodProxy fp) {
+        foodChanged(fp);
     }
 
     public synchronized void deleteServings(List list) {
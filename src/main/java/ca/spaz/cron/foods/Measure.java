@@ -1,6 +1,8 @@
 package ca.spaz.cron.foods;
 
-import ca.spaz.util.XMLNode;
+import java.io.IOException;
+
+import ca.spaz.util.XMLWriter;
 
 
 /**
@@ -114,11 +116,11 @@ public class Measure {
         return description.equals(m.getDescription());
     }
 
-    public XMLNode toXMLNode() {
-        XMLNode node = new XMLNode("measure");
-        node.addAttribute("name", getDescription());
-        node.addAttribute("amount", getAmount());
-        node.addAttribute("grams", getGrams());
-        return node;
+    public void writeXML(XMLWriter out) throws IOException {
+        out.startElement("measure");
+        out.addAttribute("name", getDescription());
+        out.addAttribute("amount", getAmount());
+        out.addAttribute("grams", getGrams());
+        out.endElement();
     }
 }
@@ -13,6 +13,7 @@ import ca.spaz.cron.Cronometer;
 import ca.spaz.cron.targets.DRI;
 import ca.spaz.cron.user.User;
 import ca.spaz.gui.ErrorReporter;
+import ca.spaz.util.XMLParsers;
 
 public class NutrientInfo {
 
@@ -54,10 +55,13 @@ public class NutrientInfo {
     }
 
     private static void load(InputStream in) throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        Document d = db.parse(in);
+        DocumentBuilder db = XMLParsers.acquireDocumentBuilder();
+        Document d;
+        try {
+            d = db.parse(in);
+        } finally {
+            XMLParsers.release(db);
+        }
         Element root = d.getDocumentElement();
         NodeList nl = root.getElementsByTagName("nutrient");
         for (int i = 0; i < nl.getLength(); i++) {
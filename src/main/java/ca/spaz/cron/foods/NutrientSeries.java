@@ -0,0 +1,112 @@
+package ca.spaz.cron.foods;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Running nutrient totals over consecutive days, from the first day with
+ * servings to the last. The totals of any range of days are the difference
+ * of two running totals, so they take the same time to find for a year as
+ * for a single day.
+ *
+ * Days without servings share the running totals of the day before, so only
+ * days with servings take up memory. When days change, the running totals
+ * are recomputed only from the earliest changed day on.
+ */
+public class NutrientSeries {
+
+    private long first; // the day number of the first day
+    private NutrientTotals[] running; // running[i] is the totals of the days before first + i
+
+    /**
+     * @param days the numbers of the days with servings, in increasing order
+     * @param totals the totals of each of those days
+     */
+    public NutrientSeries(List<Long> days, List<NutrientTotals> totals) {
+        if (days.isEmpty()) {
+            running = new NutrientTotals[] { new NutrientTotals() };
+            return;
+        }
+        first = days.get(0).longValue();
+        long last = days.get(days.size() - 1).longValue();
+        running = new NutrientTotals[(int)(last - first) + 2];
+        fill(0, days, totals);
+    }
+
+    /**
+     * See if there are no days with servings.
+     */
+    public boolean isEmpty() {
+        return running.length == 1;
+    }
+
+    /**
+     * Get the number of the first day with servings.
+     */
+    public long getFirstDay() {
+        return first;
+    }
+
+    /**
+     * Recompute the running totals after the servings changed on some days.
+     * The days before <code>from</code> must be unchanged, and the series
+     * must not be empty.
+     * @param from the number of the earliest changed day, not before the
+     *    first day
+     * @param days the numbers of the days from <code>from</code> on with
+     *    servings, in increasing order
+     * @param totals the totals of each of those days
+     */
+    public void update(long from, List<Long> days, List<NutrientTotals> totals) {
+        // running[start] is the totals of the unchanged days before from
+        int start = (int)Math.min(from - first, running.length - 1);
+        int length;
+        if (days.isEmpty()) {
+            length = start + 1;
+        } else {
+            length = (int)(days.get(days.size() - 1).longValue() - first) + 2;
+        }
+        running = Arrays.copyOf(running, length);
+        fill(start, days, totals);
+    }
+
+    /**
+     * Fill in the running totals from an index on, starting from the totals
+     * already there.
+     */
+    private void fill(int start, List<Long> days, List<NutrientTotals> totals) {
+        NutrientTotals sum = running[start] == null ? new NutrientTotals() : running[start];
+        int next = 0;
+        for (int i = start; i < running.length; i++) {
+            running[i] = sum;
+            if (next < days.size() && days.get(next).longValue() == first + i) {
+                sum = new NutrientTotals(sum);
+                sum.add(totals.get(next), 1);
+                next++;
+            }
+        }
+    }
+
+    /**
+     * Get the totals of the days before the given day.
+     */
+    private NutrientTotals getRunningTotals(long day) {
+        long i = Math.max(0, Math.min(running.length - 1, day - first));
+        return running[(int)i];
+    }
+
+    /**
+     * Get the totals of all servings from the start day through the end day.
+     * @param start the number of the first day
+     * @param end the number of the last day, inclusive
+     * @return the totals, which may be modified
+     */
+    public NutrientTotals getTotalsBetween(long start, long end) {
+        if (end < start) {
+            return new NutrientTotals();
+        }
+        NutrientTotals t = new NutrientTotals(getRunningTotals(end + 1));
+        t.add(getRunningTotals(start), -1);
+        return t;
+    }
+}
@@ -40,6 +40,13 @@ public class NutrientTable {
         nutrients[index] = val;
     }
 
+    /**
+     * Set every amount to zero, to use the table as a running total.
+     */
+    public void clear() {
+        Arrays.fill(nutrients, 0);
+    }
+
     /**
      * Add the nutrients in the given table to our total
      *
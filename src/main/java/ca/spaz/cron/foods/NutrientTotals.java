@@ -0,0 +1,105 @@
+package ca.spaz.cron.foods;
+
+import java.util.List;
+
+/**
+ * The total nutrients in a list of servings, along with the calories coming
+ * from each macronutrient. Everything is computed in a single pass over the
+ * servings, so summary views can read any number of totals without walking
+ * the servings again.
+ */
+public class NutrientTotals {
+
+    private NutrientTable amounts = new NutrientTable();
+    private double proteinCalories = 0;
+    private double carbCalories = 0;
+    private double lipidCalories = 0;
+    private double alcoholCalories = 0;
+    private int servings = 0;
+
+    /**
+     * Create empty totals.
+     */
+    public NutrientTotals() {
+        amounts.clear();
+    }
+
+    public NutrientTotals(NutrientTotals t) {
+        amounts = new NutrientTable(t.amounts);
+        proteinCalories = t.proteinCalories;
+        carbCalories = t.carbCalories;
+        lipidCalories = t.lipidCalories;
+        alcoholCalories = t.alcoholCalories;
+        servings = t.servings;
+    }
+
+    public NutrientTotals(List list) {
+        amounts.clear();
+        int protein = NutrientInfo.getByName("Protein").getIndex();
+        int fat = NutrientInfo.getByName("Fat").getIndex();
+        int carbs = NutrientInfo.getByName("Carbs").getIndex();
+        int alcohol = NutrientInfo.getByName("Alcohol").getIndex();
+        for (int i = 0; i < list.size(); i++) {
+            Serving serving = (Serving)list.get(i);
+            if (!serving.isLoaded()) {
+                continue;
+            }
+            Food f = serving.getFood();
+            NutrientTable nt = f.getNutrients();
+            double weight = serving.getGrams() / 100.0;
+            amounts.addFood(nt, weight);
+            proteinCalories += weight * nt.getAmount(protein) * f.getProteinConversionFactor();
+            lipidCalories += weight * nt.getAmount(fat) * f.getLipidConversionFactor();
+            carbCalories += weight * nt.getAmount(carbs) * f.getCarbConversionFactor();
+            alcoholCalories += weight * nt.getAmount(alcohol) * f.getAlcoholConversionFactor();
+            servings++;
+        }
+    }
+
+    /**
+     * Add other totals to these, scaled by a weight.
+     * @param t the totals to add
+     * @param weight 1 to add, -1 to subtract
+     */
+    public void add(NutrientTotals t, double weight) {
+        for (int i = 0; i < amounts.nutrients.length; i++) {
+            amounts.nutrients[i] += weight * t.amounts.nutrients[i];
+        }
+        proteinCalories += weight * t.proteinCalories;
+        carbCalories += weight * t.carbCalories;
+        lipidCalories += weight * t.lipidCalories;
+        alcoholCalories += weight * t.alcoholCalories;
+        servings += (int)Math.round(weight * t.servings);
+    }
+
+    public double getAmount(NutrientInfo ni) {
+        return amounts.getAmount(ni.getIndex());
+    }
+
+    /**
+     * Get the calories from protein, using each food's conversion factor.
+     */
+    public double getProteinCalories() {
+        return proteinCalories;
+    }
+
+    public double getCarbCalories() {
+        return carbCalories;
+    }
+
+    public double getLipidCalories() {
+        return lipidCalories;
+    }
+
+    public double getAlcoholCalories() {
+        return alcoholCalories;
+    }
+
+    /**
+     * Get the number of servings counted, which excludes servings of foods
+     * that could not be loaded.
+     */
+    public int getServingCount() {
+        return servings;
+    }
+}
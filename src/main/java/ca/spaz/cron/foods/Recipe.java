@@ -1,8 +1,9 @@
 package ca.spaz.cron.foods;
 
+import java.io.IOException;
 import java.util.*;
 
-import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLWriter;
 
 public class Recipe extends Food {
     private List servings;
@@ -28,17 +29,12 @@ public class Recipe extends Food {
         return "recipe";
     }
 
-    public XMLNode toXML() {
-        return toXML(false);
-    }
-
-    public XMLNode toXML(boolean export) {
-        XMLNode node = super.toXML();
+    protected void writeContents(XMLWriter out, boolean export) throws IOException {
+        super.writeContents(out, export);
         for (Iterator iter = getServings().iterator(); iter.hasNext(); ) {
             Serving serving = (Serving) iter.next();
-            node.addChild(serving.toXML(export));
+            serving.writeXML(out, export);
         }
-        return node;
     }
 
     public List getServings() {
@@ -51,7 +47,9 @@ public class Recipe extends Food {
     public void addServings(Collection s) {
         Iterator iter = s.iterator();
         while (iter.hasNext()) {
-            addServing(new Serving((Serving)iter.next()));
+            Serving serving = new Serving((Serving)iter.next());
+            serving.setDate(null);
+            getServings().add(serving);
         }
         recomputeNutrients();
     }
@@ -68,19 +66,27 @@ public class Recipe extends Food {
     }
 
     /**
-     * Walk through all of the servings and tally up the
-     * nutrient values for the entire meal.
+     * Walk through all of the servings once and tally up the
+     * nutrient values for the entire meal. Must be called after
+     * any of the servings or the foods in the recipe change.
      */
-    private void recomputeNutrients() {
+    public void recomputeNutrients() {
+        NutrientTotals totals = new NutrientTotals(getServings());
         double total = getTotalGrams();
+        double scale = total > 0 ? 100.0 / total : 0;
 
         Iterator iter = NutrientInfo.getGlobalList().iterator();
         while (iter.hasNext()) {
             NutrientInfo ni = (NutrientInfo)iter.next();
-            setNutrientAmount(ni, getAmount(ni, total));
+            setNutrientAmount(ni, scale * totals.getAmount(ni));
         }
 
-        recomputeFactors();
+        double pgrams = totals.getAmount(NutrientInfo.getByName("Protein"));
+        double fgrams = totals.getAmount(NutrientInfo.getByName("Fat"));
+        double cgrams = totals.getAmount(NutrientInfo.getByName("Carbs"));
+        setProteinConversionFactor(pgrams <= 0 ? 0 : totals.getProteinCalories() / pgrams);
+        setLipidConversionFactor(fgrams <= 0 ? 0 : totals.getLipidCalories() / fgrams);
+        setCarbConversionFactor(cgrams <= 0 ? 0 : totals.getCarbCalories() / cgrams);
 
         boolean found = false;
         List list = getMeasures();
@@ -105,57 +111,6 @@ public class Recipe extends Food {
         return total;
     }
 
-    /**
-     * Get the nutrient amount by walking through all of the servings
-     * and calculating the total amount.
-     */
-    private double getAmount(NutrientInfo ni, double totalGrams) {
-        double total = 0;
-        for (Iterator iter = getServings().iterator(); iter.hasNext(); ) {
-            Serving serving = (Serving) iter.next();
-            if (serving.getFood() != null) {
-                double weight = (serving.getGrams() / totalGrams);
-                total += weight * serving.getFood().getNutrientAmount(ni);
-            }
-        }
-        return total;
-    }
-
-    /**
-     * Get the nutrient amount by walking through all of the servings and
-     * calculating the total amount.
-     */
-    private void recomputeFactors() {
-        NutrientInfo pni = NutrientInfo.getByName("Protein");
-        NutrientInfo fni = NutrientInfo.getByName("Fat");
-        NutrientInfo cni = NutrientInfo.getByName("Carbs");
-        double pcals = 0, fcals = 0, ccals = 0;
-        double pgrams = 0, fgrams = 0, cgrams = 0;
-        for (Iterator iter = getServings().iterator(); iter.hasNext(); ) {
-            Serving serving = (Serving) iter.next();
-            Food f = serving.getFood();
-            if (serving.isLoaded()) {
-                double weight = serving.getGrams() / 100.0;
-
-                pgrams += weight * f.getNutrientAmount(pni);
-                pcals += weight * f.getNutrientAmount(pni)
-                         * f.getProteinConversionFactor();
-
-                fgrams += weight * f.getNutrientAmount(fni);
-                fcals += weight * f.getNutrientAmount(fni)
-                         * f.getLipidConversionFactor();
-
-                cgrams += weight * f.getNutrientAmount(cni);
-                ccals += weight * f.getNutrientAmount(cni)
-                         * f.getCarbConversionFactor();
-            }
-        }
-        setProteinConversionFactor(pgrams == 0 ? 0 : pcals / pgrams);
-        setLipidConversionFactor(fgrams == 0 ? 0 : fcals / fgrams);
-        setCarbConversionFactor(cgrams == 0 ? 0 : ccals / cgrams);
-
-    }
-
     public void setServings(List list) {
         servings = list;
         recomputeNutrients();
@@ -1,5 +1,6 @@
 package ca.spaz.cron.foods;
 
+import java.io.IOException;
 import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.Date;
@@ -7,12 +8,14 @@ import java.util.List;
 
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 
 import ca.spaz.cron.datasource.*;
 import ca.spaz.cron.records.Record;
 import ca.spaz.cron.user.UserManager;
 import ca.spaz.sql.SQLRow;
 import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLWriter;
 
 /**
  * Stores an amount and time of a food serving
@@ -86,16 +89,59 @@ public class Serving implements Record {
             System.err.println("Failed to load food [" + source + ":" + e.getAttribute("food") + "]");
             return;
         }
+        loadAttributes(e);
+    }
+
+    public void load(Attributes atts, String text) {
+        FoodDataSource source = Datasources.getUserFoods();
+        if (atts.getValue("source") != null) {
+            source = Datasources.getSource(atts.getValue("source"));
+        }
+
+        FoodProxy proxy = source.getFoodProxy(atts.getValue("food"));
+        setFood(proxy);
+        if (proxy == null) {
+            System.err.println("Failed to load food [" + source + ":" + atts.getValue("food") + "]");
+            return;
+        }
+        loadAttributes(atts);
+    }
+
+    /**
+     * Load from a streamed serving element that had its food stored as a child.
+     * @param atts the attributes of the serving element
+     * @param f the food read from the child element, or null if there was none
+     */
+    public void load(Attributes atts, Food f) {
+        FoodProxy proxy = null;
+        if (f != null) {
+            proxy = addToUserFoodsIfMissing(atts.getValue("source"), f);
+        }
+        if (proxy == null) {
+            load(atts, (String)null);
+            return;
+        }
+        setFood(proxy);
+        loadAttributes(atts);
+    }
 
-        if (e.hasAttribute("date")) {
-            setDate(new Date(Long.parseLong(e.getAttribute("date"))));
+    /**
+     * Load the serving's attributes from either a DOM <code>Element</code>
+     * or SAX <code>Attributes</code>
+     */
+    private void loadAttributes(Object e) {
+        String str = XMLNode.getString(e, "date", null);
+        if (str != null) {
+            setDate(new Date(Long.parseLong(str)));
         }
-        setGrams(Double.parseDouble(e.getAttribute("grams")));
-        if (e.hasAttribute("meal")) {
-            setMeal(Integer.parseInt(e.getAttribute("meal")));
+        setGrams(XMLNode.getDouble(e, "grams"));
+        str = XMLNode.getString(e, "meal", null);
+        if (str != null) {
+            setMeal(Integer.parseInt(str));
         }
-        if (e.hasAttribute("measure")) {
-            setMeasure(e.getAttribute("measure"));
+        str = XMLNode.getString(e, "measure", null);
+        if (str != null) {
+            setMeasure(str);
         }
     }
 
@@ -114,33 +160,33 @@ public class Serving implements Record {
         return f.getProxy();
     }
 
-    public synchronized XMLNode toXML(boolean export) {
-        XMLNode node = toXML();
+    public synchronized void writeXML(XMLWriter out, boolean export) throws IOException {
+        writeStart(out);
         if (export && (food.getSource() == Datasources.getUserFoods())) {
-            if (food.getFood() instanceof Recipe) {
-                node.addChild(((Recipe)food.getFood()).toXML(export));
-            } else {
-                node.addChild(food.getFood().toXML());
-            }
+            food.getFood().writeXML(out, export);
         }
-        return node;
+        out.endElement();
     }
 
-    public synchronized XMLNode toXML() {
-        XMLNode node = new XMLNode("serving");
-        node.addAttribute("source", food.getSource().getName());
-        node.addAttribute("food", food.getSourceID());
+    public synchronized void writeXML(XMLWriter out) throws IOException {
+        writeStart(out);
+        out.endElement();
+    }
+
+    private void writeStart(XMLWriter out) throws IOException {
+        out.startElement("serving");
+        out.addAttribute("source", food.getSource().getName());
+        out.addAttribute("food", food.getSourceID());
         if (date != 0) {
-            node.addAttribute("date", date);
+            out.addAttribute("date", date);
         }
-        node.addAttribute("grams", grams);
+        out.addAttribute("grams", grams);
         if (measure != Measure.GRAM) {
-            node.addAttribute("measure", measure.getDescription());
+            out.addAttribute("measure", measure.getDescription());
         }
         if (meal != -1) {
-            node.addAttribute("meal", meal);
+            out.addAttribute("meal", meal);
         }
-        return node;
     }
 
     public double getGrams() {
@@ -225,9 +271,6 @@ public class Serving implements Record {
     public void setFood(FoodProxy food) {
         this.food = food;
         assert food != null;
-        if (food != null) {
-            food.addReference();
-        }
     }
 
     /**
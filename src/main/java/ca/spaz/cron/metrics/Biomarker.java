@@ -1,11 +1,12 @@
 package ca.spaz.cron.metrics;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.w3c.dom.Element;
 
-import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLWriter;
 
 /**
  * Biomarker is the definition of a biological measurement the user wishes to track to monitor their health.
@@ -35,16 +36,16 @@ public class Biomarker {
         setMovingAverageDays(Integer.parseInt(e.getAttribute("movingAverageDays")));
     }
 
-    public XMLNode toXML() {
-        XMLNode node = new XMLNode("biomarker");
-        node.addAttribute("name", getName());
-        node.addAttribute("units", getUnits());
-        node.addAttribute("min", getMin());
-        node.addAttribute("max", getMax());
-        node.addAttribute("enabled", Boolean.toString(enabled));
-        node.addAttribute("showMovingAverage", Boolean.toString(showMovingAverage));
-        node.addAttribute("movingAverageDays", Integer.toString(movingAverageDays));
-        return node;
+    public void writeXML(XMLWriter out) throws IOException {
+        out.startElement("biomarker");
+        out.addAttribute("name", getName());
+        out.addAttribute("units", getUnits());
+        out.addAttribute("min", getMin());
+        out.addAttribute("max", getMax());
+        out.addAttribute("enabled", enabled);
+        out.addAttribute("showMovingAverage", showMovingAverage);
+        out.addAttribute("movingAverageDays", movingAverageDays);
+        out.endElement();
     }
 
     public boolean isEnabled() {
@@ -4,7 +4,6 @@ import java.io.*;
 import java.util.*;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.*;
 
@@ -12,7 +11,8 @@ import ca.spaz.cron.Cronometer;
 import ca.spaz.cron.user.UserManager;
 import ca.spaz.gui.ErrorReporter;
 import ca.spaz.util.Logger;
-import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLParsers;
+import ca.spaz.util.XMLWriter;
 
 /**
  * The Biomarkers definitions for a user.
@@ -90,10 +90,9 @@ public class BiomarkerDefinitions {
     public synchronized void save() {
         if (dirty) {
             try {
-                PrintStream ps = new PrintStream(new BufferedOutputStream(
-                                                     new FileOutputStream(getBiomarkersDefinitionsFile())));
-                writeXML(ps);
-                ps.close();
+                XMLWriter out = new XMLWriter(new FileOutputStream(getBiomarkersDefinitionsFile()));
+                writeXML(out);
+                out.close();
             } catch (IOException e) {
                 e.printStackTrace();
                 ErrorReporter.showError(e, Cronometer.getInstance());
@@ -102,14 +101,14 @@ public class BiomarkerDefinitions {
         }
     }
 
-    public synchronized void writeXML(PrintStream out) {
-        XMLNode node = new XMLNode("biomarkers");
+    public synchronized void writeXML(XMLWriter out) throws IOException {
+        out.setPrintNewLines(true);
+        out.startElement("biomarkers");
         for (int i = 0; i < biomarkers.size(); i++) {
             Biomarker biomarker = (Biomarker)biomarkers.get(i);
-            node.addChild(biomarker.toXML());
+            biomarker.writeXML(out);
         }
-        node.setPrintNewLines(true);
-        node.write(out);
+        out.endElement();
     }
 
     public synchronized void load() {
@@ -144,10 +143,13 @@ public class BiomarkerDefinitions {
      */
     public synchronized void load(InputStream in) {
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document d = db.parse(in);
+            DocumentBuilder db = XMLParsers.acquireDocumentBuilder();
+            Document d;
+            try {
+                d = db.parse(in);
+            } finally {
+                XMLParsers.release(db);
+            }
             Element e = d.getDocumentElement();
 
             NodeList nl = e.getElementsByTagName("biomarker");
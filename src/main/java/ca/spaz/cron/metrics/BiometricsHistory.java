@@ -3,6 +3,7 @@ package ca.spaz.cron.metrics;
 import java.util.*;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
 import ca.spaz.cron.records.History;
 import ca.spaz.cron.records.Record;
@@ -14,6 +15,25 @@ import ca.spaz.cron.records.Record;
  */
 public class BiometricsHistory extends History {
 
+    // the metrics of each biomarker by name; not initialized here, as
+    // History loads entries before this class's fields would be set
+    private HashMap<String, MetricSeries> series;
+    // where each metric is in the series, as it may be edited in place
+    private IdentityHashMap<Metric, Filing> filings;
+
+    /**
+     * The series a metric was added to, and the time it had then.
+     */
+    private static class Filing {
+        MetricSeries series;
+        long time;
+
+        Filing(MetricSeries series, long time) {
+            this.series = series;
+            this.time = time;
+        }
+    }
+
     public BiometricsHistory() {
         super();
     }
@@ -30,6 +50,12 @@ public class BiometricsHistory extends History {
         return new Metric(item);
     }
 
+    public Record loadUserEntry(Attributes atts, String text) {
+        Metric entry = new Metric();
+        entry.load(atts, text);
+        return entry;
+    }
+
     /**
      * Add a new record of a Metric to the history
      */
@@ -41,22 +67,82 @@ public class BiometricsHistory extends History {
         return getEntriesOn(curDate);
     }
 
-    public List getMetricsOfType(String type) {
-        ArrayList res = new ArrayList();
-        for (int i = 0; i < entries.size(); i++) {
-            Metric m = (Metric)entries.get(i);
-            if (m.getName().equals(type)) {
-                res.add(m);
-            }
+    /**
+     * Get the metrics of a biomarker, sorted by date.
+     */
+    public synchronized List getMetricsOfType(String type) {
+        return getSeries(type).getMetrics();
+    }
+
+    /**
+     * Get the metrics of a biomarker as a series, which is kept up to date
+     * as metrics are added, edited and deleted.
+     * @param type the name of the biomarker
+     */
+    public synchronized MetricSeries getSeries(String type) {
+        getEntries(); // read any months not yet loaded
+        return getSeriesOf(type);
+    }
+
+    protected void entryAdded(Record entry, long day) {
+        file((Metric)entry);
+    }
+
+    protected void entryRemoved(Record entry, long day) {
+        unfile((Metric)entry);
+    }
+
+    /**
+     * Add a metric to its biomarker's series, and note where it went.
+     */
+    private void file(Metric m) {
+        if (m.getName() == null) {
+            return;
+        }
+        if (filings == null) {
+            filings = new IdentityHashMap<Metric, Filing>();
+        }
+        MetricSeries ms = getSeriesOf(m.getName());
+        ms.add(m);
+        filings.put(m, new Filing(ms, m.getDate().getTime()));
+    }
+
+    /**
+     * Remove a metric from the series it was added to.
+     */
+    private void unfile(Metric m) {
+        Filing f = filings == null ? null : filings.remove(m);
+        if (f != null) {
+            f.series.remove(m, f.time);
         }
-        return res;
+    }
+
+    private MetricSeries getSeriesOf(String type) {
+        if (series == null) {
+            series = new HashMap<String, MetricSeries>();
+        }
+        MetricSeries ms = series.get(type);
+        if (ms == null) {
+            ms = new MetricSeries(type);
+            series.put(type, ms);
+        }
+        return ms;
     }
 
     public void delete(Metric m) {
         deleteEntry(m);
     }
 
-    public void update(Metric m) {
+    /**
+     * Save an edited metric. It is filed again in its biomarker's series,
+     * as its name, date or value may have changed.
+     */
+    public synchronized void update(Metric m) {
+        unfile(m);
         updateEntry(m);
+        // a metric moved to another day has already been filed again
+        if (contains(m) && (filings == null || !filings.containsKey(m))) {
+            file(m);
+        }
     }
 }
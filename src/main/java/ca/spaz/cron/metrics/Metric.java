@@ -1,11 +1,14 @@
 package ca.spaz.cron.metrics;
 
+import java.io.IOException;
 import java.util.Date;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
 import ca.spaz.cron.records.Record;
 import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLWriter;
 
 public class Metric implements Comparable, Record {
     public static String WEIGHT_UNIT = null;
@@ -37,6 +40,12 @@ public class Metric implements Comparable, Record {
         setDate(new Date(Long.parseLong(e.getAttribute("date"))));
     }
 
+    public void load(Attributes atts, String text) {
+        setName(atts.getValue("name"));
+        setValue(atts.getValue("value"));
+        setDate(new Date(XMLNode.getLong(atts, "date")));
+    }
+
     /**
      * Compares two metrics by date for sorting.
      */
@@ -72,15 +81,15 @@ public class Metric implements Comparable, Record {
         this.value = value;
     }
 
-    public XMLNode toXML() {
-        XMLNode node = new XMLNode("metric");
-        node.addAttribute("name", getName());
-        node.addAttribute("date", getDate().getTime());
-        node.addAttribute("value", getValue().doubleValue());
+    public void writeXML(XMLWriter out) throws IOException {
+        out.startElement("metric");
+        out.addAttribute("name", getName());
+        out.addAttribute("date", getDate().getTime());
+        out.addAttribute("value", getValue().doubleValue());
         if (name.equals("Weight") && WEIGHT_UNIT != null) {
-            node.addAttribute("unit", WEIGHT_UNIT);
+            out.addAttribute("unit", WEIGHT_UNIT);
         }
-        return node;
+        out.endElement();
     }
 
     public String toString() {
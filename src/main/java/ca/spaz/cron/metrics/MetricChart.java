@@ -7,7 +7,6 @@ import java.awt.event.KeyEvent;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.*;
-import java.util.List;
 
 import javax.swing.*;
 
@@ -31,6 +30,7 @@ public class MetricChart extends JFrame {
     private TimeSeriesCollection dataset;
     private TimeSeries actualData;
     private TimeSeries movingAverageData;
+    private int from, to; // the range of the series shown
     private JFreeChart chart;
     private ChartPanel chartPanel;
 
@@ -92,28 +92,47 @@ public class MetricChart extends JFrame {
         dataset.addSeries(actualData);
     }
 
+    /**
+     * Fill the chart with the metrics between the start and end dates,
+     * found by binary search in the biomarker's series.
+     */
     private void getData() {
+        MetricSeries series = UserManager.getCurrentUser().getBiometricsHistory().getSeries(metricName);
+        // If the initial start date has not been changed, assume we want to start from the beginning
+        if (series.size() > 0 && startDate.equals(curDate)) {
+            startDate = new Date(series.getTime(0));
+        }
+        from = series.indexOf(startDate.getTime());
+        to = Math.max(from, series.indexOf(endDate.getTime() + 1));
+        // notify listeners once, not for every point
+        actualData.setNotify(false);
         actualData.clear();
-        List metrics = UserManager.getCurrentUser().getBiometricsHistory().getMetricsOfType(metricName);
-        // Sort by date
-        Collections.sort(metrics);
-        for (int i = 0; i < metrics.size(); i++) {
-            Metric m = (Metric)metrics.get(i);
-            // If the initial start date has not been changed, assume we want to start from the beginning
-            if (i == 0 && startDate.equals(curDate)) {
-                startDate = m.getDate();
-            }
-            if ((startDate.equals(m.getDate()) || startDate.before(m.getDate())) &&
-                    (endDate.equals(m.getDate()) || endDate.after(m.getDate()))) {
-                actualData.addOrUpdate(new Day(m.getDate()), m.getValue());
-            }
+        for (int i = from; i < to; i++) {
+            actualData.addOrUpdate(new Day(new Date(series.getTime(i))), series.getValue(i));
+        }
+        actualData.setNotify(true);
+        if (movingAverageChk != null && movingAverageChk.isSelected()) {
+            calculateMovingAverage();
         }
     }
 
+    /**
+     * Fill the moving average series, averaging only metrics within the
+     * start and end dates.
+     */
     private void calculateMovingAverage() {
-        movingAverageData = MovingAverage.createMovingAverage(
-                                actualData, movingAverageDays + " Day Moving Average", movingAverageDays, 0
-                            );
+        MetricSeries series = UserManager.getCurrentUser().getBiometricsHistory().getSeries(metricName);
+        if (movingAverageData == null) {
+            movingAverageData = new TimeSeries("", Day.class);
+        }
+        movingAverageData.setKey(movingAverageDays + " Day Moving Average");
+        movingAverageData.setNotify(false);
+        movingAverageData.clear();
+        for (int i = from; i < to; i++) {
+            movingAverageData.addOrUpdate(new Day(new Date(series.getTime(i))),
+                                          series.getMovingAverage(i, movingAverageDays, from));
+        }
+        movingAverageData.setNotify(true);
     }
 
     /**
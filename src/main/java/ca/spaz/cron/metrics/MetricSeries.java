@@ -0,0 +1,172 @@
+package ca.spaz.cron.metrics;
+
+import java.util.*;
+
+import ca.spaz.util.ToolBox;
+
+/**
+ * All of the recorded values of one biomarker, sorted by time and held in
+ * primitive arrays, so a chart can slice out a range of dates with a binary
+ * search and read values without unboxing.
+ *
+ * Running sums of the values are kept as metrics are added and removed, so
+ * the moving average at any point is a single subtraction.
+ */
+public class MetricSeries {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String name;
+    private int size = 0;
+    private long[] times = new long[INITIAL_CAPACITY]; // milliseconds, in increasing order
+    private long[] days = new long[INITIAL_CAPACITY]; // day number of each time
+    private double[] values = new double[INITIAL_CAPACITY];
+    private double[] sums = new double[INITIAL_CAPACITY + 1]; // sums[i] is the total of values before i
+    private Metric[] metrics = new Metric[INITIAL_CAPACITY];
+
+    public MetricSeries(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the time of a metric, in milliseconds.
+     */
+    public long getTime(int i) {
+        return times[i];
+    }
+
+    public double getValue(int i) {
+        return values[i];
+    }
+
+    public Metric getMetric(int i) {
+        return metrics[i];
+    }
+
+    /**
+     * Get all of the metrics, sorted by date.
+     */
+    public List getMetrics() {
+        return new ArrayList(Arrays.asList(metrics).subList(0, size));
+    }
+
+    /**
+     * Find the first metric at or after a time.
+     * @param time milliseconds
+     * @return the index, or <code>size()</code> if every metric is earlier
+     */
+    public int indexOf(long time) {
+        return lowerBound(times, time);
+    }
+
+    /**
+     * Get the average of the values recorded over a number of days, up to
+     * and including the day of a metric.
+     * @param i the index of the last metric averaged
+     * @param numDays the number of days averaged
+     * @param from the index of the first metric that may be averaged
+     */
+    public double getMovingAverage(int i, int numDays, int from) {
+        int first = Math.max(from, lowerBound(days, days[i] - numDays + 1));
+        return (sums[i + 1] - sums[first]) / (i + 1 - first);
+    }
+
+    /**
+     * Add a metric, after any others at the same time. Adding the latest
+     * metric takes constant time.
+     */
+    void add(Metric m) {
+        if (size == times.length) {
+            grow();
+        }
+        long time = m.getDate().getTime();
+        int i = lowerBound(times, time + 1);
+        System.arraycopy(times, i, times, i + 1, size - i);
+        System.arraycopy(days, i, days, i + 1, size - i);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        System.arraycopy(metrics, i, metrics, i + 1, size - i);
+        times[i] = time;
+        days[i] = ToolBox.getDayNumber(m.getDate());
+        values[i] = m.getValue().doubleValue();
+        metrics[i] = m;
+        size++;
+        updateSums(i);
+    }
+
+    /**
+     * Remove a metric. The metric's date and value may have been edited
+     * since it was added.
+     * @param time the time the metric had when it was added, in milliseconds
+     * @return true if the metric was in the series
+     */
+    boolean remove(Metric m, long time) {
+        int i = find(m, time);
+        if (i < 0) {
+            return false;
+        }
+        System.arraycopy(times, i + 1, times, i, size - i - 1);
+        System.arraycopy(days, i + 1, days, i, size - i - 1);
+        System.arraycopy(values, i + 1, values, i, size - i - 1);
+        System.arraycopy(metrics, i + 1, metrics, i, size - i - 1);
+        size--;
+        metrics[size] = null;
+        updateSums(i);
+        return true;
+    }
+
+    private int find(Metric m, long time) {
+        for (int i = indexOf(time); i < size && times[i] == time; i++) {
+            if (metrics[i] == m) {
+                return i;
+            }
+        }
+        for (int i = 0; i < size; i++) {
+            if (metrics[i] == m) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Recompute the running sums from an index on.
+     */
+    private void updateSums(int from) {
+        for (int i = from; i < size; i++) {
+            sums[i + 1] = sums[i] + values[i];
+        }
+    }
+
+    private void grow() {
+        int capacity = times.length * 2;
+        times = Arrays.copyOf(times, capacity);
+        days = Arrays.copyOf(days, capacity);
+        values = Arrays.copyOf(values, capacity);
+        sums = Arrays.copyOf(sums, capacity + 1);
+        metrics = Arrays.copyOf(metrics, capacity);
+    }
+
+    /**
+     * Find the first of the sorted values that is not less than the key.
+     */
+    private int lowerBound(long[] a, long key) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < key) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+}
@@ -1,11 +1,14 @@
 package ca.spaz.cron.notes;
 
+import java.io.IOException;
 import java.util.Date;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
 import ca.spaz.cron.records.Record;
 import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLWriter;
 
 public class Note implements Record {
     private long time = System.currentTimeMillis();
@@ -14,7 +17,7 @@ public class Note implements Record {
     public Record copy() {
         Note n = new Note();
         n.setTime(time);
-        setNote(note);
+        n.setNote(note);
         return n;
     }
 
@@ -39,13 +42,16 @@ public class Note implements Record {
         this.note = XMLNode.getTextContent(e);
     }
 
-    public XMLNode toXML() {
-        XMLNode node = new XMLNode("note");
-        node.addAttribute("time", time);
-        if (note != null) {
-            node.setText(note);
-        }
-        return node;
+    public void load(Attributes atts, String text) {
+        this.time = XMLNode.getLong(atts, "time");
+        this.note = text;
+    }
+
+    public void writeXML(XMLWriter out) throws IOException {
+        out.startElement("note");
+        out.addAttribute("time", time);
+        out.addText(note);
+        out.endElement();
     }
 
     public void setNote(String n) {
@@ -5,6 +5,7 @@ import java.util.Date;
 import java.util.List;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
 import ca.spaz.cron.records.History;
 import ca.spaz.cron.records.Record;
@@ -37,6 +38,12 @@ public class NotesHistory extends History {
         return note;
     }
 
+    public Record loadUserEntry(Attributes atts, String text) {
+        Note note = new Note();
+        note.load(atts, text);
+        return note;
+    }
+
     public synchronized String getNote(Date date) {
         String str = null;
         List list = getEntriesOn(date);
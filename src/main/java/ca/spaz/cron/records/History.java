@@ -1,12 +1,17 @@
 package ca.spaz.cron.records;
 
 import java.io.*;
+import java.time.LocalDate;
 import java.util.*;
 
 import javax.xml.parsers.*;
 
 import org.w3c.dom.*;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
 
 import ca.spaz.cron.Cronometer;
 import ca.spaz.cron.user.UserManager;
@@ -17,17 +22,42 @@ import ca.spaz.util.*;
  * A simple XML backing store taking the place of a lightweight database.
  * For storage and retrieval of timestamp based entries.
  *
- * @todo: break into multiple files for better scaling
+ * Entries are partitioned by month, one XML file per month in a directory
+ * named after the history, along with a manifest listing the months. Only
+ * months with changes are rewritten on save, and months are read from disk
+ * when first needed. Edits between saves are appended to a journal as they
+ * are made and replayed on the next load, so saving is a compaction of the
+ * journal into the changed months rather than the only copy of the edits.
+ *
  * @todo: or wrap a www/database interface instead
  *
  * @author adavidson
  */
 public abstract class History {
 
+    private static final String MANIFEST_FILE = "manifest.xml";
+    private static final int MANIFEST_VERSION = 1;
+    private static final String JOURNAL_FILE = "journal.dat";
+
     private boolean dirty = false;
 
     protected ArrayList entries = new ArrayList();
 
+    /**
+     * Entries bucketed by calendar day (see <code>ToolBox.getDayNumber()</code>),
+     * with the day each entry was filed under so it can be found again.
+     */
+    private TreeMap<Long, List> days = new TreeMap<Long, List>();
+    private IdentityHashMap<Record, Long> entryDays = new IdentityHashMap<Record, Long>();
+
+    private TreeMap<Integer, Partition> partitions = new TreeMap<Integer, Partition>();
+    private Partition loading; // the partition being read from disk
+
+    private Journal journal;
+    private long generation = 0; // number of saves made to the partitions
+    private boolean replaying = false;
+    private final Object writeLock = new Object(); // orders saves
+
     public abstract String getBaseName();
 
     public abstract String getEntryTagName();
@@ -37,17 +67,32 @@ public abstract class History {
     }
 
     public File getOldHistoryFile() {
-        return new File(UserManager.getUserDirectory(UserManager.getCurrentUser()), getBaseName() + ".bkp");
+        return new File(getHistoryFile().getParentFile(), getBaseName() + ".bkp");
     }
 
     public File getTempHistoryFile() {
-        return new File(UserManager.getUserDirectory(UserManager.getCurrentUser()), getBaseName() + ".tmp");
+        return new File(getHistoryFile().getParentFile(), getBaseName() + ".tmp");
     }
 
     public History() {
         load();
     }
 
+    /**
+     * Get the directory holding this history's monthly partition files.
+     */
+    public File getPartitionDirectory() {
+        return new File(getHistoryFile().getParentFile(), getBaseName());
+    }
+
+    /**
+     * If true, partitions are only read from disk when entries in them are
+     * first needed. Otherwise the whole history is read when it is loaded.
+     */
+    protected boolean isLoadedLazily() {
+        return true;
+    }
+
     /**
      * Reload the history file.
      *
@@ -55,142 +100,922 @@ public abstract class History {
     public void reload() {
         load();
     }
+
     /**
      * Add a new record to the history
      */
     public synchronized void addEntry(Record entry) {
-        entries.add(entry);
+        long day = ToolBox.getDayNumber(entry.getDate());
+        Partition p = getPartition(getMonth(day));
+        load(p);
+        insertEntry(entry);
+        p.dirty = true;
         dirty = true;
+        journal(Journal.ADD, day, -1, entry);
+    }
+
+    /**
+     * Append an edit to the journal. Failing to do so only loses the
+     * protection against a crash, as the edit will still be saved.
+     */
+    private void journal(int op, long day, int index, Record entry) {
+        if (journal == null || replaying || loading != null) {
+            return;
+        }
+        try {
+            getPartitionDirectory().mkdirs();
+            String xml = null;
+            if (entry != null) {
+                StringWriter sw = new StringWriter();
+                entry.writeXML(new XMLWriter(sw));
+                xml = sw.toString();
+            }
+            journal.append(generation, op, day, index, xml);
+        } catch (IOException e) {
+            Logger.error("Error writing journal", e);
+        }
+    }
+
+    /**
+     * Find the position of an entry within its day.
+     */
+    private int getIndexInDay(Record entry, long day) {
+        List list = days.get(Long.valueOf(day));
+        for (int i = 0; list != null && i < list.size(); i++) {
+            if (list.get(i) == entry) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * File an entry in the entry list, the day index and its partition.
+     */
+    private void insertEntry(Record entry) {
+        long day = ToolBox.getDayNumber(entry.getDate());
+        Partition p = getPartition(getMonth(day));
+        if (loading != null && p != loading) {
+            // read from another month's file, so both files need rewriting
+            load(p);
+            p.dirty = true;
+            loading.dirty = true;
+            dirty = true;
+        }
+        entries.add(entry);
+        indexEntry(entry, day);
+        p.entries.add(entry);
     }
 
+    private void removeEntry(Record entry) {
+        Long day = entryDays.get(entry);
+        if (day == null) {
+            return;
+        }
+        Partition p = getPartition(getMonth(day.longValue()));
+        removeIdentical(p.entries, entry);
+        p.dirty = true;
+        unindexEntry(entry);
+    }
+
+    private void indexEntry(Record entry, long dayNumber) {
+        Long day = Long.valueOf(dayNumber);
+        List list = days.get(day);
+        if (list == null) {
+            list = new ArrayList();
+            days.put(day, list);
+        }
+        list.add(entry);
+        entryDays.put(entry, day);
+        entryAdded(entry, dayNumber);
+        entriesChanged(dayNumber);
+    }
+
+    private void unindexEntry(Record entry) {
+        Long day = entryDays.remove(entry);
+        if (day == null) {
+            return;
+        }
+        List list = days.get(day);
+        removeIdentical(list, entry);
+        if (list.isEmpty()) {
+            days.remove(day);
+        }
+        entryRemoved(entry, day.longValue());
+        entriesChanged(day.longValue());
+    }
+
+    /**
+     * Called, with the history locked, whenever the entries on a day are
+     * added, removed or edited, so that subclasses can drop anything they
+     * derived from them. This may be called while the history is still being
+     * constructed.
+     * @param day the day number, or -1 if every day may have changed
+     */
+    protected void entriesChanged(long day) {
+    }
+
+    /**
+     * Called, with the history locked, whenever an entry is filed under a
+     * day, so that subclasses can keep their own indexes of entries. This may
+     * be called while the history is still being constructed.
+     * @param entry the entry
+     * @param day the day number the entry is filed under
+     */
+    protected void entryAdded(Record entry, long day) {
+    }
+
+    /**
+     * Called, with the history locked, whenever an entry is removed from the
+     * day it was filed under, including when the history is reloaded.
+     * @param entry the entry
+     * @param day the day number the entry was filed under
+     */
+    protected void entryRemoved(Record entry, long day) {
+    }
+
+    private static void removeIdentical(List list, Object o) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == o) {
+                list.remove(i);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Get all entries on the given day, in the order they were added.
+     */
     public synchronized List getEntriesOn(Date curDate) {
+        return getEntriesOnDay(ToolBox.getDayNumber(curDate));
+    }
+
+    /**
+     * Get all entries on the given day, in the order they were added.
+     * @param day the day number (see <code>ToolBox.getDayNumber()</code>)
+     */
+    protected synchronized List getEntriesOnDay(long day) {
+        Partition p = partitions.get(Integer.valueOf(getMonth(day)));
+        if (p != null) {
+            load(p);
+        }
+        List list = days.get(Long.valueOf(day));
+        if (list == null) {
+            return new ArrayList();
+        }
+        return new ArrayList(list);
+    }
+
+    /**
+     * Get all entries from the start day through the end day, inclusive,
+     * ordered by day.
+     * @param start a date on the first day of the range
+     * @param end a date on the last day of the range
+     */
+    public synchronized List getEntriesBetween(Date start, Date end) {
         ArrayList res = new ArrayList();
-        for (int i = 0; i < entries.size(); i++) {
-            Record entry = (Record)entries.get(i);
-            if (ToolBox.isSameDay(entry.getDate(), curDate)) {
-                res.add(entry);
-            }
+        long first = ToolBox.getDayNumber(start);
+        long last = ToolBox.getDayNumber(end);
+        if (first > last) {
+            return res;
+        }
+        Iterator iter = new ArrayList(partitions.subMap(
+            Integer.valueOf(getMonth(first)), true, Integer.valueOf(getMonth(last)), true).values()).iterator();
+        while (iter.hasNext()) {
+            load((Partition)iter.next());
+        }
+        iter = days.subMap(Long.valueOf(first), true, Long.valueOf(last), true).values().iterator();
+        while (iter.hasNext()) {
+            res.addAll((List)iter.next());
         }
         return res;
     }
 
-    public List getEntries() {
+    /**
+     * Get the numbers of the days that have entries, in increasing order,
+     * reading any partitions not yet loaded.
+     */
+    public synchronized List<Long> getDays() {
+        loadAll();
+        return new ArrayList<Long>(days.keySet());
+    }
+
+    /**
+     * Get the numbers of the days from a given day on that have entries, in
+     * increasing order, reading any partitions not yet loaded.
+     * @param from the number of the first day
+     */
+    public synchronized List<Long> getDaysFrom(long from) {
+        loadAll();
+        return new ArrayList<Long>(days.tailMap(Long.valueOf(from), true).keySet());
+    }
+
+    /**
+     * Get every entry in the history, reading any partitions not yet loaded.
+     */
+    public synchronized List getEntries() {
+        loadAll();
         return entries;
     }
 
-    public void deleteEntry(Record entry) {
+    public synchronized void deleteEntry(Record entry) {
         entries.remove(entry);
+        journalDelete(entry);
+        removeEntry(entry);
         dirty = true;
         Logger.debug("Remove Entry: " + entry);
     }
 
-    public void deleteEntries(List list) {
+    public synchronized void deleteEntries(List list) {
         entries.removeAll(list);
+        for (int i = 0; i < list.size(); i++) {
+            journalDelete((Record)list.get(i));
+            removeEntry((Record)list.get(i));
+        }
         dirty = true;
     }
 
-    public void updateEntry(Record entry) {
+    private void journalDelete(Record entry) {
+        Long day = entryDays.get(entry);
+        if (day != null) {
+            journal(Journal.DELETE, day.longValue(), getIndexInDay(entry, day.longValue()), null);
+        }
+    }
+
+    /**
+     * See if an entry is filed in the history.
+     */
+    protected synchronized boolean contains(Record entry) {
+        return entryDays.containsKey(entry);
+    }
+
+    /**
+     * Get the day an entry is filed under.
+     * @return the day number, or -1 if the entry is not in the history
+     */
+    protected synchronized long getDayOf(Record entry) {
+        Long day = entryDays.get(entry);
+        return day == null ? -1 : day.longValue();
+    }
+
+    public synchronized void updateEntry(Record entry) {
         Logger.debug("Update Entry: " + entry);
+        Long day = entryDays.get(entry);
+        if (day == null) {
+            return;
+        }
+        journal(Journal.UPDATE, day.longValue(), getIndexInDay(entry, day.longValue()), entry);
+        long newDay = ToolBox.getDayNumber(entry.getDate());
+        if (day.longValue() != newDay) {
+            removeEntry(entry);
+            Partition p = getPartition(getMonth(newDay));
+            load(p);
+            indexEntry(entry, newDay);
+            p.entries.add(entry);
+            p.dirty = true;
+        } else {
+            getPartition(getMonth(newDay)).dirty = true;
+            entriesChanged(newDay);
+        }
         dirty = true;
     }
 
     /**
-     * Flush to disk.
+     * Flush to disk. Only partitions with changes are rewritten. The changed
+     * entries are copied while holding the history's lock, but streamed to
+     * disk without it, so the history stays usable while it is saved.
      */
-    public synchronized void save() {
-        if (dirty) {
-            try {
-                File file = getHistoryFile();
-                File tempFile = getTempHistoryFile();
-                if (tempFile.exists()) {
-                    tempFile.delete();
+    public void save() {
+        synchronized (writeLock) {
+            Snapshot s = snapshot();
+            if (s != null) {
+                write(s);
+            }
+        }
+    }
+
+    /**
+     * Copy the changed partitions, and the manifest, as the next generation of
+     * the history. Edits made from here on go to a new journal.
+     * @return the changes to write, or null if there are none
+     */
+    private synchronized Snapshot snapshot() {
+        if (!dirty) {
+            return null;
+        }
+        Snapshot s = new Snapshot();
+        s.generation = generation + 1;
+        Iterator iter = new ArrayList(partitions.values()).iterator();
+        while (iter.hasNext()) {
+            Partition p = (Partition)iter.next();
+            if (!p.dirty) {
+                continue;
+            }
+            s.partitions.add(p);
+            if (p.entries.isEmpty()) {
+                s.entries.add(null);
+                partitions.remove(Integer.valueOf(p.month));
+            } else {
+                List copy = new ArrayList(p.entries.size());
+                for (int i = 0; i < p.entries.size(); i++) {
+                    Record entry = (Record)p.entries.get(i);
+                    if (entry.isLoaded()) {
+                        copy.add(entry.copy());
+                    }
                 }
-                PrintStream ps = new PrintStream(new BufferedOutputStream(
-                                                     new FileOutputStream(tempFile)));
-                writeXML(ps);
-                ps.close();
-                getOldHistoryFile().delete(); // delete old backup file
-                file.renameTo(getOldHistoryFile()); // more current to backup
-                file.delete(); // delete old current
-                tempFile.renameTo(file); // move temp to become new current
-            } catch (IOException e) {
-                backupFile(getTempHistoryFile());
-                e.printStackTrace();
-                ErrorReporter.showError("An error occurred while trying to save.", e, Cronometer.getInstance());
-            }
-            dirty = false;
-        }
-    }
-
-    public synchronized XMLNode toXML() {
-        XMLNode node = new XMLNode(getBaseName());
-        for (int i = 0; i < entries.size(); i++) {
-            Record entry = (Record)entries.get(i);
-            if (entry.isLoaded()) {
-                try {
-                    node.addChild(entry.toXML());
-                } catch (Exception e) {
-                    e.printStackTrace();
+                s.entries.add(copy);
+                p.generation = s.generation;
+            }
+            p.dirty = false;
+        }
+        // the manifest records the generation, so it is written on every save
+        iter = partitions.values().iterator();
+        while (iter.hasNext()) {
+            s.names.add(((Partition)iter.next()).getName());
+        }
+        if (journal != null) {
+            journal.rotate(getPendingJournalFile(journal.getGeneration()));
+        }
+        generation = s.generation;
+        dirty = false;
+        return s;
+    }
+
+    /**
+     * Write out a snapshot. Once it is on disk the journals it covers are
+     * discarded; if it fails, its partitions are marked as changed again.
+     */
+    private boolean write(Snapshot s) {
+        File dir = getPartitionDirectory();
+        File tempFile = null;
+        boolean ok = false;
+        try {
+            dir.mkdirs();
+            for (int i = 0; i < s.partitions.size(); i++) {
+                File file = ((Partition)s.partitions.get(i)).getFile();
+                List list = (List)s.entries.get(i);
+                if (list == null) {
+                    file.delete();
+                } else {
+                    tempFile = new File(dir, file.getName() + ".tmp");
+                    XMLWriter out = startFile(tempFile);
+                    out.startElement(getBaseName());
+                    out.addAttribute("generation", s.generation);
+                    writeEntries(out, list);
+                    out.endElement();
+                    endFile(out, file, tempFile);
                 }
             }
+            tempFile = new File(dir, MANIFEST_FILE + ".tmp");
+            XMLWriter out = startFile(tempFile);
+            out.startElement("manifest");
+            out.addAttribute("version", MANIFEST_VERSION);
+            out.addAttribute("generation", s.generation);
+            for (int i = 0; i < s.names.size(); i++) {
+                out.startElement("partition");
+                out.addAttribute("name", (String)s.names.get(i));
+                out.endElement();
+            }
+            out.endElement();
+            endFile(out, new File(dir, MANIFEST_FILE), tempFile);
+            ok = true;
+        } catch (IOException e) {
+            if (tempFile != null) {
+                backupFile(tempFile);
+            }
+            e.printStackTrace();
+            ErrorReporter.showError("An error occurred while trying to save.", e, Cronometer.getInstance());
+        }
+        commit(s, ok);
+        return ok;
+    }
+
+    private synchronized void commit(Snapshot s, boolean ok) {
+        if (ok) {
+            File[] files = getPendingJournalFiles();
+            for (int i = 0; i < files.length; i++) {
+                if (new Journal(files[i]).getGeneration() < s.generation) {
+                    files[i].delete();
+                }
+            }
+        } else {
+            for (int i = 0; i < s.partitions.size(); i++) {
+                Partition p = (Partition)s.partitions.get(i);
+                if (!partitions.containsKey(Integer.valueOf(p.month))) {
+                    partitions.put(Integer.valueOf(p.month), p);
+                }
+                p.dirty = true;
+            }
+            dirty = true;
+        }
+    }
+
+    /**
+     * Get the file a journal is moved to when a save starts, until the save
+     * has been written.
+     */
+    private File getPendingJournalFile(long journalGeneration) {
+        return new File(getPartitionDirectory(), "journal-" + journalGeneration + ".dat");
+    }
+
+    /**
+     * Get the journals of saves not yet known to be written, oldest first.
+     */
+    private File[] getPendingJournalFiles() {
+        File[] files = getPartitionDirectory().listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name) {
+                return name.startsWith("journal-") && name.endsWith(".dat");
+            }
+        });
+        if (files == null) {
+            return new File[0];
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            public int compare(File a, File b) {
+                return Long.compare(new Journal(a).getGeneration(), new Journal(b).getGeneration());
+            }
+        });
+        return files;
+    }
+
+    /**
+     * The changes to a history, copied so they can be written out without
+     * holding the history's lock.
+     */
+    private static class Snapshot {
+        private long generation;
+        private List partitions = new ArrayList();
+        private List entries = new ArrayList(); // copied entries per partition, or null to delete it
+        private List names = new ArrayList(); // partitions in the manifest
+    }
+
+    /**
+     * Start writing a file through a temporary file.
+     */
+    private XMLWriter startFile(File tempFile) throws IOException {
+        if (tempFile.exists()) {
+            tempFile.delete();
+        }
+        XMLWriter out = new XMLWriter(new FileOutputStream(tempFile));
+        out.setPrintNewLines(true);
+        return out;
+    }
+
+    /**
+     * Finish writing a file through a temporary file, keeping the previous
+     * version as a backup.
+     */
+    private void endFile(XMLWriter out, File file, File tempFile) throws IOException {
+        out.close();
+        File backup = new File(file.getParentFile(), file.getName() + ".bkp");
+        backup.delete(); // delete old backup file
+        file.renameTo(backup); // more current to backup
+        file.delete(); // delete old current
+        tempFile.renameTo(file); // move temp to become new current
+    }
+
+    private void writeEntries(XMLWriter out, List list) throws IOException {
+        for (int i = 0; i < list.size(); i++) {
+            Record entry = (Record)list.get(i);
+            if (entry.isLoaded()) {
+                entry.writeXML(out);
+            }
         }
-        node.setPrintNewLines(true);
-        return node;
     }
 
     public synchronized void writeXML(PrintStream out) {
-        toXML().write(out);
+        try {
+            XMLWriter xml = new XMLWriter(out);
+            xml.setPrintNewLines(true);
+            writeXML(xml);
+            xml.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Write every entry in the history, reading any partitions not yet
+     * loaded, as a single element.
+     */
+    public synchronized void writeXML(XMLWriter out) throws IOException {
+        loadAll();
+        out.startElement(getBaseName());
+        writeEntries(out, entries);
+        out.endElement();
     }
 
+    /**
+     * Load the history from its partition manifest, or migrate it from the old
+     * single history file if it has not been partitioned yet.
+     */
     public synchronized void load() {
+        Iterator iter = new ArrayList(entryDays.entrySet()).iterator();
+        while (iter.hasNext()) {
+            Map.Entry e = (Map.Entry)iter.next();
+            entryRemoved((Record)e.getKey(), ((Long)e.getValue()).longValue());
+        }
+        entries.clear();
+        days.clear();
+        entryDays.clear();
+        entriesChanged(-1);
+        partitions.clear();
+        dirty = false;
+        generation = 0;
+        journal = new Journal(new File(getPartitionDirectory(), JOURNAL_FILE));
+        File manifest = new File(getPartitionDirectory(), MANIFEST_FILE);
+        if (manifest.exists()) {
+            loadManifest(manifest);
+        } else if (getHistoryFile().exists()) {
+            migrate();
+        }
+        replayJournals();
+        if (!isLoadedLazily()) {
+            loadAll();
+        }
+    }
+
+    /**
+     * Apply the edits journaled since the last completed save, oldest first,
+     * then save them. An edit is skipped if the partition it applies to was
+     * already saved with it.
+     */
+    private void replayJournals() {
+        File[] pending = getPendingJournalFiles();
+        boolean replayed = false;
+        for (int i = 0; i <= pending.length; i++) {
+            Journal j = (i < pending.length) ? new Journal(pending[i]) : journal;
+            if (j.exists()) {
+                replayed |= replayJournal(j);
+            }
+        }
+        if (replayed) {
+            dirty = true;
+            Snapshot s = snapshot();
+            if (s != null) {
+                write(s);
+            }
+        }
+    }
+
+    private boolean replayJournal(Journal j) {
+        long journalGeneration = j.getGeneration();
+        if (journalGeneration < generation) {
+            j.clear(); // saved, but not cleared before exit
+            return false;
+        }
+        List edits;
+        try {
+            edits = j.read();
+        } catch (IOException e) {
+            backupFile(j.getFile());
+            e.printStackTrace();
+            ErrorReporter.showError(e, Cronometer.getInstance());
+            j.clear();
+            return false;
+        }
+        Logger.log("Replaying " + edits.size() + " journaled edits to " + getBaseName());
+        replaying = true;
+        try {
+            for (int i = 0; i < edits.size(); i++) {
+                replay((Journal.Edit)edits.get(i), journalGeneration);
+            }
+        } finally {
+            replaying = false;
+        }
+        // the next save must supersede this journal
+        generation = Math.max(generation, journalGeneration);
+        return true;
+    }
+
+    private void replay(Journal.Edit edit, long journalGeneration) {
+        Record old = null;
+        Partition p = partitions.get(Integer.valueOf(getMonth(edit.day)));
+        if (edit.op != Journal.ADD && p != null) {
+            load(p);
+            if (p.generation <= journalGeneration) {
+                List list = days.get(Long.valueOf(edit.day));
+                if (list != null && edit.index >= 0 && edit.index < list.size()) {
+                    old = (Record)list.get(edit.index);
+                }
+            }
+        }
+        Record entry = null;
+        if (edit.xml != null) {
+            entry = parseEntry(edit.xml);
+        }
+        if (old != null) {
+            if (entry != null && ToolBox.getDayNumber(entry.getDate()) == edit.day) {
+                replaceEntry(old, entry); // updated in place
+                return;
+            }
+            entries.remove(old);
+            removeEntry(old);
+        }
+        if (entry != null && (edit.op == Journal.ADD || edit.op == Journal.UPDATE)) {
+            Partition q = getPartition(getMonth(ToolBox.getDayNumber(entry.getDate())));
+            load(q);
+            // only the destination month says whether it already has the entry:
+            // the source month may have been saved without it while this one wasn't
+            if (q.generation <= journalGeneration) {
+                insertEntry(entry);
+                q.dirty = true;
+            }
+        }
+    }
+
+    private void replaceEntry(Record old, Record entry) {
+        Long day = entryDays.remove(old);
+        entryDays.put(entry, day);
+        replaceIdentical(entries, old, entry);
+        replaceIdentical(days.get(day), old, entry);
+        Partition p = getPartition(getMonth(day.longValue()));
+        replaceIdentical(p.entries, old, entry);
+        p.dirty = true;
+    }
+
+    private static void replaceIdentical(List list, Object o, Object replacement) {
+        for (int i = 0; i < list.size(); i++) {
+            if (list.get(i) == o) {
+                list.set(i, replacement);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Load a single entry from its XML.
+     */
+    private Record parseEntry(String xml) {
+        List list = new ArrayList();
+        try {
+            parse(new InputSource(new StringReader(xml)), new EntryHandler(list));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+        return list.isEmpty() ? null : (Record)list.get(0);
+    }
+
+    private void loadManifest(File manifest) {
+        try {
+            DocumentBuilder db = XMLParsers.acquireDocumentBuilder();
+            Document d;
+            try {
+                d = db.parse(manifest);
+            } finally {
+                XMLParsers.release(db);
+            }
+            generation = XMLNode.getLong(d.getDocumentElement(), "generation", 0);
+            NodeList nl = d.getDocumentElement().getElementsByTagName("partition");
+            for (int i = 0; i < nl.getLength(); i++) {
+                String name = ((Element)nl.item(i)).getAttribute("name");
+                int month = Integer.parseInt(name.substring(0, 4)) * 12
+                    + Integer.parseInt(name.substring(5, 7)) - 1;
+                Partition p = new Partition(month);
+                p.loaded = false;
+                partitions.put(Integer.valueOf(month), p);
+            }
+        } catch (Exception e) {
+            backupFile(manifest);
+            e.printStackTrace();
+            ErrorReporter.showError(e, Cronometer.getInstance());
+        }
+    }
+
+    /**
+     * One-time conversion of the old single history file into monthly
+     * partitions. The old file is kept as a backup once the partitions have
+     * been written.
+     */
+    private void migrate() {
+        Logger.log("Partitioning " + getHistoryFile() + " into " + getPartitionDirectory());
+        if (!readFile(getHistoryFile())) {
+            return;
+        }
+        Iterator iter = partitions.values().iterator();
+        while (iter.hasNext()) {
+            ((Partition)iter.next()).dirty = true;
+        }
+        dirty = true;
+        if (write(snapshot())) {
+            getOldHistoryFile().delete();
+            getHistoryFile().renameTo(getOldHistoryFile());
+        }
+    }
+
+    private void loadAll() {
+        Iterator iter = new ArrayList(partitions.values()).iterator();
+        while (iter.hasNext()) {
+            load((Partition)iter.next());
+        }
+    }
+
+    private void load(Partition p) {
+        if (p.loaded) {
+            return;
+        }
+        p.loaded = true;
+        Partition prev = loading;
+        loading = p;
+        try {
+            readFile(p.getFile());
+        } finally {
+            loading = prev;
+        }
+    }
+
+    private boolean readFile(File file) {
         long start = System.currentTimeMillis();
-        Logger.debug("Loading: " + getHistoryFile());
-        if (!getHistoryFile().exists()) {
+        Logger.debug("Loading: " + file);
+        if (!file.exists()) {
             Logger.debug("  --> file does not exist");
-            return;
+            return true;
         }
         try {
             InputStream in = new BufferedInputStream(
-                new FileInputStream(getHistoryFile()));
+                new FileInputStream(file));
             load(in);
             in.close();
             long end = System.currentTimeMillis();
             Logger.debug("  --> Loaded in: " + (end - start) + " msec");
+            return true;
         } catch (FileNotFoundException e) {
             e.printStackTrace();
         } catch (Exception e) {
-            backupFile(getHistoryFile());
+            backupFile(file);
             e.printStackTrace();
             ErrorReporter.showError(e, Cronometer.getInstance());
         }
-        dirty = false;
+        return false;
+    }
+
+    /**
+     * Get a partition, creating an empty one if there is none for the month yet.
+     */
+    private Partition getPartition(int month) {
+        Integer key = Integer.valueOf(month);
+        Partition p = partitions.get(key);
+        if (p == null) {
+            p = new Partition(month);
+            partitions.put(key, p);
+        }
+        return p;
+    }
+
+    /**
+     * Get the month (counted from year 0) a day number falls in.
+     */
+    private static int getMonth(long day) {
+        LocalDate d = LocalDate.ofEpochDay(day);
+        return d.getYear() * 12 + d.getMonthValue() - 1;
+    }
+
+    /**
+     * The entries of a single month, stored in their own file.
+     */
+    private class Partition {
+        private int month;
+        private List entries = new ArrayList();
+        private boolean loaded = true;
+        private boolean dirty = false;
+        private long generation = 0; // the save this partition was last written in
+
+        public Partition(int month) {
+            this.month = month;
+        }
+
+        public String getName() {
+            int m = month % 12 + 1;
+            return (month / 12) + (m < 10 ? "-0" : "-") + m;
+        }
+
+        public File getFile() {
+            return new File(getPartitionDirectory(), getName() + ".xml");
+        }
     }
 
     /**
-     * Load Settings fresh from disk
+     * Load entries from an XML stream. The stream is parsed with SAX, and each
+     * entry is built directly from its element's attributes and text, so no
+     * document tree of the whole file is ever held in memory.
      * @throws ParserConfigurationException
      * @throws IOException
      * @throws SAXException
      */
     public synchronized void load(InputStream in) throws ParserConfigurationException, SAXException, IOException {
-        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-        dbf.setNamespaceAware(true);
-        DocumentBuilder db = dbf.newDocumentBuilder();
-        Document d = db.parse(in);
-        Element e = d.getDocumentElement();
-
-        NodeList nl = e.getElementsByTagName(getEntryTagName());
-        for (int i = 0; i < nl.getLength(); i++) {
-            try {
-                Record entry = loadUserEntry((Element)nl.item(i));
-                if (entry != null) {
-                    if (entry.isLoaded()) {
-                        addEntry(entry);
+        parse(new InputSource(in), new EntryHandler(null));
+    }
+
+    private static void parse(InputSource in, DefaultHandler handler) throws ParserConfigurationException, SAXException, IOException {
+        SAXParser parser = XMLParsers.acquireSAXParser();
+        try {
+            parser.parse(in, handler);
+        } finally {
+            XMLParsers.release(parser);
+        }
+    }
+
+    private void loadEntry(Element e, Attributes atts, String text, List target) {
+        try {
+            Record entry = (e != null) ? loadUserEntry(e) : loadUserEntry(atts, text);
+            if (entry != null) {
+                if (entry.isLoaded()) {
+                    if (target != null) {
+                        target.add(entry);
+                    } else {
+                        insertEntry(entry);
                     }
                 }
-            } catch (Exception ex) {
-                ErrorReporter.showError(ex, Cronometer.getInstance());
             }
+        } catch (Exception ex) {
+            ErrorReporter.showError(ex, Cronometer.getInstance());
+        }
+    }
+
+    /**
+     * Collects the attributes and text of each entry element. An entry with
+     * nested elements (such as a serving carrying its own food) is rebuilt as a
+     * small DOM <code>Element</code> and loaded through <code>loadUserEntry(Element)</code>.
+     * Entries are filed in the history, or collected in a list if one is given.
+     */
+    private class EntryHandler extends DefaultHandler {
+        private List target;
+        private AttributesImpl atts; // the entry being read, or null
+        private StringBuilder text = new StringBuilder();
+        private int depth;
+        private Document doc;
+        private Element entry;
+        private Element current;
+
+        public EntryHandler(List target) {
+            this.target = target;
+        }
+
+        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+            if (atts == null) {
+                if (loading != null && qName.equals(getBaseName())) {
+                    loading.generation = XMLNode.getLong(attributes, "generation", 0);
+                } else if (qName.equals(getEntryTagName())) {
+                    atts = new AttributesImpl(attributes);
+                    text.setLength(0);
+                    depth = 0;
+                }
+                return;
+            }
+            if (entry == null) {
+                entry = createElement(getEntryTagName(), atts);
+                if (text.length() > 0) {
+                    entry.appendChild(doc.createTextNode(text.toString()));
+                }
+                current = entry;
+            }
+            Element child = createElement(qName, attributes);
+            current.appendChild(child);
+            current = child;
+            depth++;
+        }
+
+        public void characters(char[] ch, int start, int length) {
+            if (atts == null) {
+                return;
+            }
+            if (current != null) {
+                current.appendChild(doc.createTextNode(new String(ch, start, length)));
+            } else {
+                text.append(ch, start, length);
+            }
+        }
+
+        public void endElement(String uri, String localName, String qName) {
+            if (atts == null) {
+                return;
+            }
+            if (depth > 0) {
+                current = (Element)current.getParentNode();
+                depth--;
+                return;
+            }
+            loadEntry(entry, atts, text.toString(), target);
+            atts = null;
+            entry = null;
+            current = null;
+        }
+
+        private Element createElement(String name, Attributes attributes) throws SAXException {
+            if (doc == null) {
+                try {
+                    DocumentBuilder db = XMLParsers.acquireDocumentBuilder();
+                    doc = db.newDocument();
+                    XMLParsers.release(db);
+                } catch (ParserConfigurationException e) {
+                    throw new SAXException(e);
+                }
+            }
+            Element e = doc.createElement(name);
+            for (int i = 0; i < attributes.getLength(); i++) {
+                e.setAttribute(attributes.getQName(i), attributes.getValue(i));
+            }
+            return e;
         }
     }
 
@@ -203,4 +1028,6 @@ public abstract class History {
     }
 
     public abstract Record loadUserEntry(Element item);
+
+    public abstract Record loadUserEntry(Attributes atts, String text);
 }
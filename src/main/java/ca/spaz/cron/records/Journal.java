@@ -0,0 +1,157 @@
+package ca.spaz.cron.records;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * An append-only log of the edits made to a <code>History</code> since its
+ * partitions were last written. Each edit is appended and synced to disk as
+ * it is made, and the log is replayed over the partitions when the history is
+ * next loaded, so a crash loses at most the edit being written.
+ *
+ * Entries are identified by their day and position within that day, which
+ * replay reproduces exactly as long as edits are applied in order to the same
+ * partitions they were made against. The generation in the header ties the log
+ * to the partitions it was written over.
+ */
+class Journal {
+
+    public static final int ADD = 1;
+    public static final int UPDATE = 2;
+    public static final int DELETE = 3;
+
+    private static final int MAGIC = 0x43524A4C; // "CRJL"
+    private static final int VERSION = 1;
+
+    private File file;
+
+    /**
+     * A single journaled edit.
+     */
+    public static class Edit {
+        public int op;
+        public long day; // day of the entry before the edit (or the new entry)
+        public int index; // position of the entry within its day
+        public String xml; // the entry after the edit, for ADD and UPDATE
+    }
+
+    public Journal(File file) {
+        this.file = file;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Move the log aside, so new edits start a new log.
+     * @param pending the file to move the log to
+     */
+    public void rotate(File pending) {
+        if (file.exists()) {
+            pending.delete();
+            file.renameTo(pending);
+        }
+    }
+
+    /**
+     * Append an edit and sync it to disk, starting a new log if there is none.
+     * @param generation the generation of the partitions the log applies to
+     */
+    public void append(long generation, int op, long day, int index, String xml) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (!file.exists() || file.length() == 0) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+        }
+        out.writeByte(op);
+        out.writeLong(day);
+        out.writeInt(index);
+        if (xml != null) {
+            byte[] data = xml.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(data.length);
+            out.write(data);
+        }
+        out.flush();
+        FileOutputStream fos = new FileOutputStream(file, true);
+        try {
+            fos.write(bytes.toByteArray());
+            fos.getChannel().force(false);
+        } finally {
+            fos.close();
+        }
+    }
+
+    /**
+     * Read the generation the log was started against.
+     * @return the generation, or -1 if there is no readable log
+     */
+    public long getGeneration() {
+        if (!file.exists()) {
+            return -1;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new FileInputStream(file));
+            try {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return -1;
+                }
+                return in.readLong();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Read all complete edits in the log. An edit cut short by a crash ends
+     * the log.
+     * @return a <code>List</code> of <code>Edit</code>s in the order they were made
+     */
+    public List read() throws IOException {
+        List edits = new ArrayList();
+        if (!file.exists()) {
+            return edits;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized journal format: " + file);
+            }
+            in.readLong();
+            while (true) {
+                Edit edit = new Edit();
+                edit.op = in.readByte();
+                edit.day = in.readLong();
+                edit.index = in.readInt();
+                if (edit.op == ADD || edit.op == UPDATE) {
+                    byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    edit.xml = new String(data, StandardCharsets.UTF_8);
+                }
+                edits.add(edit);
+            }
+        } catch (EOFException e) {
+            // end of the log, or an incomplete final edit
+        } finally {
+            in.close();
+        }
+        return edits;
+    }
+
+    /**
+     * Discard the log once its edits are in the partition files.
+     */
+    public void clear() {
+        file.delete();
+    }
+}
@@ -1,19 +1,31 @@
 package ca.spaz.cron.records;
 
+import java.io.IOException;
 import java.util.Date;
 
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 
-import ca.spaz.util.XMLNode;
+import ca.spaz.util.XMLWriter;
 
 public interface Record {
 
     public Date getDate();
 
-    public XMLNode toXML();
+    /**
+     * Write the record to an XML stream.
+     */
+    public void writeXML(XMLWriter out) throws IOException;
 
     public void load(Element e);
 
+    /**
+     * Load the record from a streamed XML element.
+     * @param atts the attributes of the record's element
+     * @param text the text content of the record's element
+     */
+    public void load(Attributes atts, String text);
+
     public Record copy();
 
     public boolean isLoaded();
@@ -8,6 +8,7 @@ import java.util.List;
 import javax.swing.*;
 
 import ca.spaz.cron.foods.NutrientInfo;
+import ca.spaz.cron.foods.NutrientTotals;
 import ca.spaz.cron.targets.Target;
 import ca.spaz.cron.user.UserManager;
 
@@ -37,8 +38,8 @@ public abstract class AbstractNutrientSummaryPanel extends JPanel {
         return scrollPane;
     }
 
-    public void update(List consumed) {
-        getNutrientTable().update(consumed);
+    public void update(NutrientTotals totals) {
+        getNutrientTable().update(totals);
     }
 
     /**
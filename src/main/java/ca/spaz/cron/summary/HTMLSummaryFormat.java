@@ -4,6 +4,7 @@ import java.util.*;
 
 import ca.spaz.cron.Cronometer;
 import ca.spaz.cron.foods.NutrientInfo;
+import ca.spaz.cron.foods.NutrientTotals;
 import ca.spaz.cron.targets.Target;
 import ca.spaz.cron.user.UserManager;
 import ca.spaz.util.StringUtil;
@@ -14,7 +15,7 @@ public class HTMLSummaryFormat extends SummaryFormat {
         return "HTML";
     }
 
-    public String export(List servings, Date start, Date end, int days, boolean targetsOnly) {
+    public String export(NutrientTotals totals, Date start, Date end, int days, boolean targetsOnly) {
         StringBuffer sb = new StringBuffer();
         sb.append("<html>\n");
         sb.append("<head><title>Nutrition Summary</title></head>\n");
@@ -30,7 +31,7 @@ public class HTMLSummaryFormat extends SummaryFormat {
         }
         sb.append("<small><table width=\"100%\">");
         for (int i = 0; i < NutrientInfo.CATEGORIES.length; i++) {
-            sb.append(exportCategory(NutrientInfo.CATEGORIES[i], servings, days, targetsOnly));
+            sb.append(exportCategory(NutrientInfo.CATEGORIES[i], totals, days, targetsOnly));
         }
         sb.append("</table></small>");
         sb.append("</body>\n");
@@ -38,14 +39,14 @@ public class HTMLSummaryFormat extends SummaryFormat {
         return sb.toString();
     }
 
-    public String exportCategory(String category, List servings, int days, boolean targetsOnly) {
+    public String exportCategory(String category, NutrientTotals totals, int days, boolean targetsOnly) {
 
         StringBuffer sb = new StringBuffer();
         List nutrients = NutrientInfo.getCategory(category);
 
         sb.append("<tr><td colspan=\"4\"><b><u>");
         sb.append(category);
-        double tcp = getTargetCompletion(servings, nutrients, days, false);
+        double tcp = getTargetCompletion(totals, nutrients, days, false);
         if (Double.isNaN(tcp)) {
             return "";
         } else {
@@ -73,18 +74,18 @@ public class HTMLSummaryFormat extends SummaryFormat {
                 sb.append("<tr>");
             }
 
-            sb.append(export(ni, servings, days, targetsOnly));
+            sb.append(export(ni, totals, days, targetsOnly));
             sb.append("</tr>\n");
         }
 
         return sb.toString();
     }
 
-    public String export(NutrientInfo ni, List servings, int days, boolean targetsOnly) {
+    public String export(NutrientInfo ni, NutrientTotals totals, int days, boolean targetsOnly) {
 
         StringBuffer sb = new StringBuffer();
 
-        double amount = getAmount(servings, ni) / (double)days;
+        double amount = totals.getAmount(ni) / (double)days;
 
         Target target = UserManager.getCurrentUser().getTarget(ni);
 
@@ -4,7 +4,6 @@ import java.awt.Component;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.text.DecimalFormat;
-import java.util.Iterator;
 import java.util.List;
 
 import javax.swing.*;
@@ -12,7 +11,7 @@ import javax.swing.table.*;
 
 import ca.spaz.cron.Cronometer;
 import ca.spaz.cron.foods.NutrientInfo;
-import ca.spaz.cron.foods.Serving;
+import ca.spaz.cron.foods.NutrientTotals;
 import ca.spaz.cron.targets.NutrientInfoPanel;
 import ca.spaz.cron.targets.Target;
 import ca.spaz.cron.user.UserChangeListener;
@@ -21,7 +20,7 @@ import ca.spaz.gui.*;
 
 public class NutrientTable extends PrettyTable implements UserChangeListener {
 
-    private List servings;
+    private NutrientTotals totals;
     private List nutrients, master;
     private NutrientTableModel model;
 
@@ -79,16 +78,10 @@ public class NutrientTable extends PrettyTable implements UserChangeListener {
     }
 
     public double getAmount(NutrientInfo ni) {
-        // TODO: cache this value!
-        double total = 0;
-        if (servings != null) {
-            for (Iterator iter = servings.iterator(); iter.hasNext(); ) {
-                Serving serving = (Serving) iter.next();
-                double weight = serving.getGrams() / 100.0;
-                total += weight * serving.getFood().getNutrientAmount(ni);
-            }
+        if (totals == null) {
+            return 0;
         }
-        return total;
+        return totals.getAmount(ni);
     }
 
     private NutrientTableModel getNutrientTableModel() {
@@ -165,8 +158,8 @@ public class NutrientTable extends PrettyTable implements UserChangeListener {
 
     }
 
-    public void update(List consumed) {
-        this.servings = consumed;
+    public void update(NutrientTotals totals) {
+        this.totals = totals;
         getNutrientTableModel().fireTableDataChanged();
     }
 
@@ -5,6 +5,8 @@ import java.util.List;
 
 import javax.swing.JTabbedPane;
 
+import ca.spaz.cron.foods.NutrientTotals;
+
 import ca.spaz.gui.WrapperDialog;
 import ca.spaz.util.ToolBox;
 
@@ -59,12 +61,21 @@ public class NutritionSummaryPanel extends JTabbedPane {
     }
 
     public void setServings(List consumed, boolean allSelected) {
-        getGeneralPanel().update(consumed);
-        getMineralsPanel().update(consumed);
-        getVitaminsPanel().update(consumed);
-        getAminoAcidsPanel().update(consumed);
-        getLipidsPanel().update(consumed);
-        getTargetSummaryPanel().update(consumed, allSelected);
+        setTotals(new NutrientTotals(consumed), allSelected);
+    }
+
+    /**
+     * Show the totals of a set of servings in every tab.
+     * @param totals the totals, possibly shared with other views
+     * @param allSelected true if the totals are of the whole day
+     */
+    public void setTotals(NutrientTotals totals, boolean allSelected) {
+        getGeneralPanel().update(totals);
+        getMineralsPanel().update(totals);
+        getVitaminsPanel().update(totals);
+        getAminoAcidsPanel().update(totals);
+        getLipidsPanel().update(totals);
+        getTargetSummaryPanel().update(totals, allSelected);
     }
 
     public void setExercises(List exercises) {
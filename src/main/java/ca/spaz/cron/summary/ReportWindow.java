@@ -5,11 +5,11 @@ import java.awt.event.*;
 import java.io.*;
 import java.text.DateFormat;
 import java.util.*;
-import java.util.List;
 
 import javax.swing.*;
 
 import ca.spaz.cron.Cronometer;
+import ca.spaz.cron.foods.NutrientTotals;
 import ca.spaz.cron.user.UserManager;
 import ca.spaz.gui.*;
 import ca.spaz.util.ImageFactory;
@@ -45,26 +45,10 @@ public class ReportWindow extends WrappedPanel {
     private void generateReport() {
         boolean targetsOnly = getTargetsOnlyBox().isSelected();
 
-        int numDays = 1;
-        List servings = new ArrayList();
-        servings.addAll(UserManager.getCurrentUser().getFoodHistory().getConsumedOn(getStartDate()));
+        int numDays = (int)(ToolBox.getDayNumber(getEndDate()) - ToolBox.getDayNumber(getStartDate())) + 1;
+        NutrientTotals totals = UserManager.getCurrentUser().getFoodHistory().getTotalsBetween(getStartDate(), getEndDate());
 
-        if (!ToolBox.isSameDay(getStartDate(), getEndDate())) {
-            Date last = new Date(getStartDate().getTime());
-            Calendar cal = new GregorianCalendar();
-            cal.setTime(getStartDate());
-            while (!cal.getTime().after(getEndDate())) {
-                if (!ToolBox.isSameDay(cal.getTime(), last)) {
-                    last = cal.getTime();
-                    servings.addAll(UserManager.getCurrentUser().getFoodHistory().getConsumedOn(last));
-
-                    numDays++;
-                }
-                cal.add(Calendar.HOUR, 12);
-            }
-        }
-
-        report = getFormat().export(servings, getStartDate(), getEndDate(), numDays, targetsOnly);
+        report = getFormat().export(totals, getStartDate(), getEndDate(), numDays, targetsOnly);
         if (getFormat() instanceof HTMLSummaryFormat) {
             getHTMLViewer().setHTML(report);
         } else {
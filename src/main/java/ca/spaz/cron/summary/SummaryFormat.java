@@ -5,7 +5,7 @@ import java.text.DecimalFormat;
 import java.util.*;
 
 import ca.spaz.cron.foods.NutrientInfo;
-import ca.spaz.cron.foods.Serving;
+import ca.spaz.cron.foods.NutrientTotals;
 import ca.spaz.cron.targets.Target;
 import ca.spaz.cron.user.UserManager;
 
@@ -20,25 +20,23 @@ public abstract class SummaryFormat {
         return getFormatName();
     }
 
-    public abstract String export(List servings, Date start, Date end, int days, boolean targetsOnly);
-    public abstract String exportCategory(String category, List servings, int days, boolean targetsOnly);
-    public abstract String export(NutrientInfo ni, List servings, int days, boolean targetsOnly);
-
-    public double getAmount(List servings, NutrientInfo ni) {
-        double total = 0;
-        for (Iterator iter = servings.iterator(); iter.hasNext(); ) {
-            Serving serving = (Serving) iter.next();
-            double weight = serving.getGrams() / 100.0;
-            total += weight * serving.getFood().getNutrientAmount(ni);
-        }
-        return total;
+    /**
+     * Export a summary of a list of servings. The servings are totalled in a
+     * single pass, and every part of the summary reads from the totals.
+     */
+    public String export(List servings, Date start, Date end, int days, boolean targetsOnly) {
+        return export(new NutrientTotals(servings), start, end, days, targetsOnly);
     }
 
+    public abstract String export(NutrientTotals totals, Date start, Date end, int days, boolean targetsOnly);
+    public abstract String exportCategory(String category, NutrientTotals totals, int days, boolean targetsOnly);
+    public abstract String export(NutrientInfo ni, NutrientTotals totals, int days, boolean targetsOnly);
+
     /**
      * Look through all nutrients and see what overall percentage of the targets
      * are completed.
      */
-    public double getTargetCompletion(List servings, List nutrients, int days, boolean average) {
+    public double getTargetCompletion(NutrientTotals totals, List nutrients, int days, boolean average) {
         double total = 0;
         double value = 0;
         double valueFull = 0;
@@ -48,7 +46,7 @@ public abstract class SummaryFormat {
             NutrientInfo ni = (NutrientInfo)iter.next();
             Target target = UserManager.getCurrentUser().getTarget(ni);
             if (target.getMin() > 0 && UserManager.getCurrentUser().isTracking(ni)) {
-                double amount = getAmount(servings, ni) / (double) days;
+                double amount = totals.getAmount(ni) / (double) days;
                 valueFull += amount / target.getMin();
                 if (amount < target.getMin()) {
                     value += amount / target.getMin();
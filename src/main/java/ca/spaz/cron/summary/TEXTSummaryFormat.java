@@ -4,6 +4,7 @@ import java.util.*;
 
 import ca.spaz.cron.Cronometer;
 import ca.spaz.cron.foods.NutrientInfo;
+import ca.spaz.cron.foods.NutrientTotals;
 import ca.spaz.cron.targets.Target;
 import ca.spaz.cron.user.UserManager;
 import ca.spaz.util.StringUtil;
@@ -14,7 +15,7 @@ public class TEXTSummaryFormat extends SummaryFormat {
         return "Text";
     }
 
-    public String export(List servings, Date start, Date end, int days, boolean targetsOnly) {
+    public String export(NutrientTotals totals, Date start, Date end, int days, boolean targetsOnly) {
         StringBuffer sb = new StringBuffer();
         sb.append(StringUtil.charRun('=', 42));
         if (days > 1) {
@@ -31,12 +32,12 @@ public class TEXTSummaryFormat extends SummaryFormat {
         sb.append('\n');
 
         for (int i = 0; i < NutrientInfo.CATEGORIES.length; i++) {
-            sb.append(exportCategory(NutrientInfo.CATEGORIES[i], servings, days, targetsOnly));
+            sb.append(exportCategory(NutrientInfo.CATEGORIES[i], totals, days, targetsOnly));
         }
         return sb.toString();
     }
 
-    public String exportCategory(String category, List servings, int days, boolean targetsOnly) {
+    public String exportCategory(String category, NutrientTotals totals, int days, boolean targetsOnly) {
 
         StringBuffer sb = new StringBuffer();
 
@@ -44,7 +45,7 @@ public class TEXTSummaryFormat extends SummaryFormat {
 
         List nutrients = NutrientInfo.getCategory(category);
 
-        double tcp = getTargetCompletion(servings, nutrients, days, false);
+        double tcp = getTargetCompletion(totals, nutrients, days, false);
         if (Double.isNaN(tcp)) {
             return "";
         } else {
@@ -59,18 +60,18 @@ public class TEXTSummaryFormat extends SummaryFormat {
         Iterator iter = nutrients.iterator();
         while (iter.hasNext()) {
             NutrientInfo ni = (NutrientInfo)iter.next();
-            sb.append(export(ni, servings, days, targetsOnly));
+            sb.append(export(ni, totals, days, targetsOnly));
         }
         sb.append('\n');
 
         return sb.toString();
     }
 
-    public String export(NutrientInfo ni, List servings, int days, boolean targetsOnly) {
+    public String export(NutrientInfo ni, NutrientTotals totals, int days, boolean targetsOnly) {
 
         StringBuffer sb = new StringBuffer();
 
-        double amount = getAmount(servings, ni) / (double)days;
+        double amount = totals.getAmount(ni) / (double)days;
 
         Target target = UserManager.getCurrentUser().getTarget(ni);
         if (targetsOnly) {
@@ -35,7 +35,7 @@ public class TargetSummaryChart extends JComponent implements UserChangeListener
     DecimalFormat valFormat = new DecimalFormat("00");
 
     NutritionSummaryPanel summary;
-    List consumed;
+    NutrientTotals totals;
     List exercises;
 
     boolean allSelected;
@@ -61,8 +61,8 @@ public class TargetSummaryChart extends JComponent implements UserChangeListener
         setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
     }
 
-    public void update(List consumed, boolean allSelected) {
-        this.consumed = consumed;
+    public void update(NutrientTotals totals, boolean allSelected) {
+        this.totals = totals;
         this.allSelected = allSelected;
         update();
     }
@@ -73,7 +73,10 @@ public class TargetSummaryChart extends JComponent implements UserChangeListener
     }
 
     public void update() {
-        energy = getAmount(consumed, NutrientInfo.getByName("Energy"));
+        if (totals == null) {
+            return;
+        }
+        energy = totals.getAmount(NutrientInfo.getByName("Energy"));
 
         if(allSelected) {
             energyBurned = getEnergyBurned(exercises);
@@ -81,37 +84,21 @@ public class TargetSummaryChart extends JComponent implements UserChangeListener
             energyBurned = 0;
         }
 
-        protein = getAmount(consumed, NutrientInfo.getProtein());
-        carbs = getAmount(consumed, NutrientInfo.getCarbs());
-        fiber = getAmount(consumed, NutrientInfo.getByName("Fiber"));
-        lipid = getAmount(consumed, NutrientInfo.getFat());
+        protein = totals.getAmount(NutrientInfo.getProtein());
+        carbs = totals.getAmount(NutrientInfo.getCarbs());
+        fiber = totals.getAmount(NutrientInfo.getByName("Fiber"));
+        lipid = totals.getAmount(NutrientInfo.getFat());
         vitamins = summary.getVitaminsPanel().getTargetCompletion(false);
         minerals = summary.getMineralsPanel().getTargetCompletion(false);
-        computeCalorieBreakdown(consumed);
+        computeCalorieBreakdown();
         repaint();
     }
 
-    private void computeCalorieBreakdown(List servings) {
-        NutrientInfo pni = NutrientInfo.getByName("Protein");
-        NutrientInfo fni = NutrientInfo.getByName("Fat");
-        NutrientInfo cni = NutrientInfo.getByName("Carbs");
-        NutrientInfo ani = NutrientInfo.getByName("Alcohol");
-        pcals = ccals = fcals = acals = 0;
-        for (Iterator iter = servings.iterator(); iter.hasNext(); ) {
-            Serving serving = (Serving) iter.next();
-            Food f = serving.getFood();
-            if (serving.isLoaded()) {
-                double weight = serving.getGrams() / 100.0;
-                pcals += weight * f.getNutrientAmount(pni)
-                         * f.getProteinConversionFactor();
-                fcals += weight * f.getNutrientAmount(fni)
-                         * f.getLipidConversionFactor();
-                ccals += weight * f.getNutrientAmount(cni)
-                         * f.getCarbConversionFactor();
-                acals += weight * f.getNutrientAmount(ani)
-                         * f.getAlcoholConversionFactor();
-            }
-        }
+    private void computeCalorieBreakdown() {
+        pcals = totals.getProteinCalories();
+        fcals = totals.getLipidCalories();
+        ccals = totals.getCarbCalories();
+        acals = totals.getAlcoholCalories();
         total = pcals + ccals + fcals + acals;
         if (total > 0 && energy - total > 0.1) {
             ccals += (energy - total);
@@ -119,18 +106,6 @@ public class TargetSummaryChart extends JComponent implements UserChangeListener
         }
     }
 
-    private double getAmount(List servings, NutrientInfo ni) {
-        double total = 0;
-        for (Iterator iter = servings.iterator(); iter.hasNext(); ) {
-            Serving serving = (Serving) iter.next();
-            if (serving.isLoaded()) {
-                double weight = serving.getGrams() / 100.0;
-                total += weight * serving.getFood().getNutrientAmount(ni);
-            }
-        }
-        return total;
-    }
-
     private double getEnergyBurned(List exercises) {
         double total = 0;
 
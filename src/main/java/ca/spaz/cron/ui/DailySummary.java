@@ -4,6 +4,7 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.text.DateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -12,6 +13,7 @@ import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 
 import ca.spaz.cron.Cronometer;
+import ca.spaz.cron.datasource.Datasources;
 import ca.spaz.cron.exercise.*;
 import ca.spaz.cron.foods.*;
 import ca.spaz.cron.metrics.BiomarkerPanel;
@@ -63,12 +65,25 @@ public class DailySummary extends JPanel implements UserChangeListener {
     private NutritionSummaryPanel totals;
     boolean asked = false;
 
+    // the user's histories are loaded in the background at startup, and an
+    // empty day is shown until they are
+    private volatile boolean loaded = false;
+
     public DailySummary() {
         setPreferredSize(new Dimension(580, 640));
         initialize();
         setDate(curDate, false);
         UserManager.getUserManager().addUserChangeListener(this);
-        notifyObservers();
+        Datasources.whenLoaded(new Runnable() {
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        loaded = true;
+                        setDate(curDate, true);
+                    }
+                });
+            }
+        });
     }
 
     public void addServingToUser(Serving c, User user, Date date) {
@@ -230,12 +245,15 @@ public class DailySummary extends JPanel implements UserChangeListener {
             servingTable.addChangeListener(new ChangeListener() {
                 public void stateChanged(ChangeEvent e) {
                     List servings = servingTable.getSelectedServings();
-                    boolean allSelected = false;
-                    if (servings.size() == 0) {
-                        servings = servingTable.getServings();
-                        allSelected = true;
+                    if (servings.size() == 0 && !loaded) {
+                        getNutritionSummaryPanel().setServings(servings, true);
+                    } else if (servings.size() == 0) {
+                        // the whole day, which the history keeps totals for
+                        getNutritionSummaryPanel().setTotals(
+                            UserManager.getCurrentUser().getFoodHistory().getTotalsOn(curDate), true);
+                    } else {
+                        getNutritionSummaryPanel().setServings(servings, false);
                     }
-                    getNutritionSummaryPanel().setServings(servings, allSelected);
                 }
             });
         }
@@ -394,6 +412,11 @@ public class DailySummary extends JPanel implements UserChangeListener {
     }
 
     public void notifyObservers() {
+        if (!loaded) {
+            getServingTable().setServings(new ArrayList());
+            getExerciseTable().setExercises(new ArrayList());
+            return;
+        }
         List consumed = UserManager.getCurrentUser().getFoodHistory().getConsumedOn(curDate);
         getServingTable().setServings(consumed);
         List exercises = UserManager.getCurrentUser().getExerciseHistory().getConsumedOn(curDate);
@@ -411,12 +434,14 @@ public class DailySummary extends JPanel implements UserChangeListener {
         curDate = d;
         getDateTitle().setText(df.format(curDate));
         validate();
-        getBioMarkersPanel().setDate(d);
         getServingTable().setTitle(df.format(curDate));
-        if (!userChanged) {
-            getNotesEditor().saveCurrentNote();
+        if (loaded) {
+            getBioMarkersPanel().setDate(d);
+            if (!userChanged) {
+                getNotesEditor().saveCurrentNote();
+            }
+            getNotesEditor().setDate(d);
         }
-        getNotesEditor().setDate(d);
         asked = false;
         refreshTime();
         notifyObservers();
@@ -0,0 +1,189 @@
+package ca.spaz.cron.ui;
+
+import java.util.*;
+
+import ca.spaz.cron.datasource.*;
+import ca.spaz.util.LRUCache;
+
+/**
+ * Remembers the foods matching recent searches of each datasource, so that
+ * typing ahead does not search the whole datasource on every keystroke.
+ *
+ * Queries are keyed by their normalized tokens. Typing more of a query only
+ * ever narrows its matches, so a query that misses is answered by filtering
+ * the matches of the longest cached query it extends: "chicke" filters the
+ * matches of "chick". Backspacing usually finds the shorter query still
+ * cached.
+ *
+ * Typo tolerant searches are cached as well, but only ever reused for the
+ * same query: their matches do not narrow as the query grows.
+ *
+ * Any change to the user's foods clears the cache, since cached matches may
+ * include or miss the changed food.
+ */
+public class QueryCache implements UserFoodsListener {
+
+    private static final int DEFAULT_SIZE = 64; // queries remembered
+
+    private LRUCache<String, List> cache;
+    private long generation = 0; // bumped on every invalidation
+
+    private long refined = 0;
+    private long searched = 0;
+
+    public QueryCache() {
+        this(DEFAULT_SIZE);
+    }
+
+    public QueryCache(int size) {
+        cache = new LRUCache<String, List>(size);
+    }
+
+    /**
+     * Find all foods in a datasource matching the search text, with the same
+     * results as <code>FoodDataSource.findFoods()</code>.
+     * @param source the datasource to search
+     * @param text the user's search terms, as entered
+     * @return the matching foods, in datasource order; the list must not be modified
+     */
+    public List find(FoodDataSource source, String text) {
+        String[] terms = FoodIndex.tokenize(text);
+        String key = getKey(source, terms);
+        List found = cache.get(key);
+        if (found != null) {
+            return found;
+        }
+        long gen = getGeneration();
+        List parent = findParent(source, text);
+        if (parent != null) {
+            found = filter(parent, terms);
+            synchronized (this) {
+                refined++;
+            }
+        } else {
+            found = source.findFoods(terms);
+            synchronized (this) {
+                searched++;
+            }
+        }
+        return store(key, found, gen);
+    }
+
+    /**
+     * Find all foods in a datasource matching the search text, allowing for
+     * typing mistakes, with the same results as
+     * <code>FoodDataSource.findSimilarFoods()</code>.
+     * @param source the datasource to search
+     * @param text the user's search terms, as entered
+     * @return the matching foods, in datasource order; the list must not be modified
+     */
+    public List findSimilar(FoodDataSource source, String text) {
+        String[] terms = FoodIndex.tokenize(text);
+        String key = "~" + getKey(source, terms);
+        List found = cache.get(key);
+        if (found != null) {
+            return found;
+        }
+        long gen = getGeneration();
+        found = source.findSimilarFoods(terms);
+        synchronized (this) {
+            searched++;
+        }
+        return store(key, found, gen);
+    }
+
+    private synchronized List store(String key, List found, long gen) {
+        found = Collections.unmodifiableList(found);
+        // don't cache results computed from data changed since
+        if (gen == generation) {
+            cache.put(key, found);
+        }
+        return found;
+    }
+
+    /**
+     * Find the matches of the longest cached query this one extends, by
+     * trimming characters off the end of the search text. Any query made
+     * this way matches every food the full query does.
+     */
+    private List findParent(FoodDataSource source, String text) {
+        for (int end = text.length() - 1; end > 0; end--) {
+            String[] terms = FoodIndex.tokenize(text.substring(0, end));
+            if (terms.length == 0) {
+                break;
+            }
+            List found = cache.get(getKey(source, terms));
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Keep only the foods with a description word starting with each term.
+     */
+    private static List filter(List foods, String[] terms) {
+        List found = new ArrayList();
+        for (int i = 0; i < foods.size(); i++) {
+            FoodProxy fp = (FoodProxy)foods.get(i);
+            if (matches(FoodIndex.tokenize(fp.getDescription()), terms)) {
+                found.add(fp);
+            }
+        }
+        return found;
+    }
+
+    private static boolean matches(String[] words, String[] terms) {
+        for (int i = 0; i < terms.length; i++) {
+            boolean match = false;
+            for (int j = 0; j < words.length && !match; j++) {
+                match = words[j].startsWith(terms[i]);
+            }
+            if (!match) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getKey(FoodDataSource source, String[] terms) {
+        String[] sorted = terms.clone();
+        Arrays.sort(sorted);
+        StringBuffer sb = new StringBuffer(source.getName());
+        for (int i = 0; i < sorted.length; i++) {
+            sb.append(' ');
+            sb.append(sorted[i]);
+        }
+        return sb.toString();
+    }
+
+    private synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Forget all cached queries.
+     */
+    public synchronized void clear() {
+        generation++;
+        cache.clear();
+    }
+
+    public void userFoodAdded(FoodProxy fp) {
+        clear();
+    }
+
+    public void userFoodModified(FoodProxy fp) {
+        clear();
+    }
+
+    public void userFoodDeleted(FoodProxy fp) {
+        clear();
+    }
+
+    public synchronized String toString() {
+        return "QueryCache[" + cache.size() + " queries, " + cache.getHitCount() + " hits, "
+            + refined + " refined, " + searched + " searched]";
+    }
+}
@@ -1,10 +1,13 @@
 package ca.spaz.cron.ui;
 
-import ca.spaz.cron.datasource.Datasources;
 import ca.spaz.cron.datasource.FoodProxy;
 
 
 public class SearchHit implements Comparable {
+    // per search term matched only with a typo; typo hits are only ever
+    // ranked against each other, since exact matches are found first
+    private static final int TYPO_PENALTY = 100;
+
     private FoodProxy fp;
     private int score;
 
@@ -13,38 +16,27 @@ public class SearchHit implements Comparable {
     }
 
     /**
-     * A heuristic scoring function to give a smart sort of the results
-     * @param query the user's search terms, as entered
+     * A heuristic scoring function to give a smart sort of the results. The
+     * parts of the score that depend only on the food are precomputed by
+     * its proxy.
+     * @param query the user's search terms, normalized by <code>FoodIndex.tokenize()</code>
      */
     public void computeScore(String[] query) {
-        score = 100; // base score, so we don't go negative
+        score = fp.getRank();
 
         // start off with big bonus for having a history of being used
         score += fp.getReferences() * 100;
 
-        // I hate how USDA is full of babyfoods. Come on, really.
-        if (fp.getDescription().startsWith("Babyfood")) {
-            score -= 100;
-        }
-
-        if (fp.getSource() == Datasources.getUserFoods()) {
-            score += 100;
-        } else if (fp.getSource() == Datasources.getCRDBFoods()) {
-            score += 50;
-        }
-
-        // penalize longer strings. We're usually searching for short, simple foods.
-        score -= 3 * getFoodProxy().getDescription().length();
-
         // add bonus for search terms being early in the description
+        String key = fp.getSortKey();
         for (int i = 0; i < query.length; i++) {
-            score += 50 * (1.0 - (fp.getDescription().indexOf(query[i]) / (double)fp.getDescription().length()));
-        }
-
-        if (fp.isDeprecated()) {
-            score -= 200;
+            int pos = key.indexOf(query[i]);
+            if (pos < 0) {
+                score -= TYPO_PENALTY;
+            } else {
+                score += 50 * (1.0 - (pos / (double)key.length()));
+            }
         }
-
     }
 
     public int getScore() {
@@ -54,6 +46,14 @@ public class SearchHit implements Comparable {
         return fp;
     }
 
+    /**
+     * Point this hit at a different food, to be scored again.
+     */
+    void setFoodProxy(FoodProxy fp) {
+        this.fp = fp;
+        this.score = 0;
+    }
+
     public int compareTo(Object obj) {
         SearchHit hit = (SearchHit) obj;
 
@@ -65,11 +65,11 @@ public class SearchHit implements Comparable {
         }
 
         // break tie with alphabetical order
-        return getFoodProxy().getDescription().compareToIgnoreCase(hit.getFoodProxy().getDescription());
+        return compareByName(hit);
     }
 
     public int compareByName(Object obj) {
         SearchHit hit = (SearchHit) obj;
-        return getFoodProxy().getDescription().compareToIgnoreCase(hit.getFoodProxy().getDescription());
+        return getFoodProxy().getSortKey().compareTo(hit.getFoodProxy().getSortKey());
     }
 }
@@ -3,6 +3,7 @@ package ca.spaz.cron.ui;
 import java.awt.*;
 import java.awt.event.*;
 import java.util.*;
+import java.util.List;
 
 import javax.swing.*;
 import javax.swing.border.CompoundBorder;
@@ -28,6 +29,9 @@ import ca.spaz.gui.*;
 public class SearchPanel extends JPanel implements ItemListener {
     public static final String SELECTED_FOOD = "SELECTED_FOOD";
 
+    private static final long TYPING_DELAY = 150; // msec of quiet before a live search runs
+    private static final int PAGE_SIZE = 200; // results loaded at a time
+
     private JComboBox sourceBox;
     private JTextField queryField;
     private ResultsTableModel model = new ResultsTableModel();
@@ -38,9 +42,23 @@ public class SearchPanel extends JPanel implements ItemListener {
     private Vector listeners;
     private boolean updateAsTyping = true;
     private int maxScore = 1, minScore = 0;;
+    private SearchService searchService;
+    private FoodDataSource searchSource;
+    private int limit = PAGE_SIZE;
+    private int total = 0;
+    private boolean searching = false;
 
     public SearchPanel() {
         listeners = new Vector();
+        searchService = new SearchService(new SearchService.Listener() {
+            public void searchCompleted(List hits, int total) {
+                showResults(hits, total);
+            }
+            public void searchFailed() {
+                // keep the results shown, but let the next page be asked for
+                searching = false;
+            }
+        });
         setLayout(new BorderLayout(6, 6));
         setBorder(new CompoundBorder(
                       BorderFactory.createEtchedBorder(),
@@ -75,7 +93,7 @@ public class SearchPanel extends JPanel implements ItemListener {
                         public void run() {
                             if (e.getKeyChar() != '\n') {
                                 if (updateAsTyping()) {
-                                    doDBSearch();
+                                    doDBSearch(TYPING_DELAY);
                                 }
                             }
                         }
@@ -186,7 +204,17 @@ public class SearchPanel extends JPanel implements ItemListener {
         });
 
 
-        JScrollPane jsp = new JScrollPane(resultTable);
+        final JScrollPane jsp = new JScrollPane(resultTable);
+        // load the next page of results when scrolled near the bottom
+        jsp.getVerticalScrollBar().addAdjustmentListener(new AdjustmentListener() {
+            public void adjustmentValueChanged(AdjustmentEvent e) {
+                JScrollBar bar = jsp.getVerticalScrollBar();
+                int rows = 4 * resultTable.getRowHeight();
+                if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - rows) {
+                    loadMore();
+                }
+            }
+        });
         jsp.setPreferredSize(new Dimension(500, 200));
         jsp.getViewport().setBackground(Color.WHITE);
         jsp.setBorder(BorderFactory.createEtchedBorder());
@@ -242,66 +270,91 @@ public class SearchPanel extends JPanel implements ItemListener {
      * Depending on the selected source, a different database will be searched
      */
     public void doDBSearch() {
+        doDBSearch(0);
+    }
+
+    private void doDBSearch(long delay) {
         Object sel = getSourceBox().getSelectedItem();
         if (sel instanceof FoodDataSource) {
-            doDBSearch((FoodDataSource)sel);
+            doDBSearch((FoodDataSource)sel, delay);
         } else {
-            doDBSearch(null);
+            doDBSearch(null, delay);
         }
     }
 
     private void clearResults() {
         synchronized (result) {
             result.clear();
+            total = 0;
             maxScore = Integer.MIN_VALUE;
             minScore = Integer.MAX_VALUE;
         }
     }
 
     /**
-     * Execute a search query for a food.
+     * Execute a search query for a food. The search runs in the background,
+     * and the results are shown when it completes.
      */
     public void doDBSearch(FoodDataSource ds) {
-        String query = getQueryField().getText().trim();
-        String[] parts = query.split("\\s");
-        clearResults();
-        ArrayList foods = new ArrayList();
-        synchronized (result) {
-            if (query.length() == 0) {
-                if (ds != null) {
-                    foods.addAll(ds.getAllFoods());
-                } else {
-                    Iterator iter = Datasources.getDatasources().iterator();
-                    while (iter.hasNext()) {
-                        ds = (FoodDataSource)iter.next();
-                        foods.addAll(ds.getAllFoods());
-                    }
-                }
-            } else {
-                if (ds != null) {
-                    foods.addAll(ds.findFoods(parts));
-                } else {
-                    Iterator iter = Datasources.getDatasources().iterator();
-                    while (iter.hasNext()) {
-                        ds = (FoodDataSource)iter.next();
-                        foods.addAll(ds.findFoods(parts));
-                    }
-                }
-            }
+        doDBSearch(ds, 0);
+    }
 
-            // score results:
-            Iterator iter = foods.iterator();
-            while (iter.hasNext()) {
-                SearchHit hit = new SearchHit((FoodProxy)iter.next());
-                hit.computeScore(parts);
+    private void doDBSearch(FoodDataSource ds, long delay) {
+        searchSource = ds;
+        limit = PAGE_SIZE;
+        runSearch(delay);
+    }
+
+    /**
+     * Search again for the current number of results, in the current order.
+     */
+    private void runSearch(long delay) {
+        searching = true;
+        searchService.search(getQueryField().getText(), searchSource, model.getComparator(), limit, delay);
+    }
+
+    /**
+     * Extend the results by another page, if there are more to show and no
+     * search is already running.
+     */
+    private void loadMore() {
+        if (!searching && result.size() < total) {
+            limit += PAGE_SIZE;
+            runSearch(0);
+        }
+    }
+
+    /**
+     * Show the results of the latest search.
+     */
+    private void showResults(List hits, int total) {
+        // a larger page starts with the same results, so keep the selection
+        int selected = resultTable.getSelectedRow();
+        boolean extended = searching && hits.size() > result.size() && limit > PAGE_SIZE;
+        searching = false;
+        this.total = total;
+        synchronized (result) {
+            result.clear();
+            maxScore = Integer.MIN_VALUE;
+            minScore = Integer.MAX_VALUE;
+            for (int i = 0; i < hits.size(); i++) {
+                SearchHit hit = (SearchHit)hits.get(i);
                 maxScore = Math.max(maxScore, hit.getScore());
                 minScore = Math.min(minScore, hit.getScore());
                 result.add(hit);
             }
-            model.sort();
         }
         model.fireTableDataChanged();
+        if (extended && selected >= 0) {
+            resultTable.getSelectionModel().setSelectionInterval(selected, selected);
+        }
+    }
 
+    /**
+     * Get the search service, to read its statistics.
+     */
+    public SearchService getSearchService() {
+        return searchService;
     }
 
     public class ResultsTableModel extends PrettyTableModel {
@@ -385,23 +438,32 @@ public class SearchPanel extends JPanel implements ItemListener {
             return "";
         }
 
+        /**
+         * Only the best results are loaded, so a new order needs a new search
+         * to find the best results in that order.
+         */
         public void sort() {
+            runSearch(0);
+        }
+
+        /**
+         * Get the order results are displayed in.
+         */
+        public Comparator getComparator() {
             final int dir = isAscending() ? 1 : -1;
             if (getSortOnColumn() == 0) {
-                Collections.sort(result, new Comparator() {
+                return new Comparator() {
                     public int compare(Object a, Object b) {
                         return dir * ((SearchHit)a).compareByName((SearchHit)b);
                     }
-                });
-            } else {
-                // default column sort by rank
-                if (isAscending()) {
-                    Collections.sort(result);
-                } else {
-                    Collections.sort(result, Collections.reverseOrder());
-                }
+                };
             }
-            model.fireTableDataChanged();
+            // default column sort by rank
+            return new Comparator() {
+                public int compare(Object a, Object b) {
+                    return dir * ((SearchHit)a).compareTo(b);
+                }
+            };
         }
 
         /**
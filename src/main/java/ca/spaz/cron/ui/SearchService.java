@@ -0,0 +1,409 @@
+package ca.spaz.cron.ui;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import javax.swing.SwingUtilities;
+
+import ca.spaz.cron.datasource.*;
+import ca.spaz.util.Logger;
+
+/**
+ * Runs food searches on a background thread, so typing in a search field
+ * never waits on the database. A new search replaces any search still waiting
+ * or running: waiting searches are dropped, and running ones stop at their
+ * next check. Only the results of the latest search are delivered, on the
+ * event dispatch thread.
+ *
+ * Only the best <code>limit</code> hits of a search are kept, chosen with a
+ * bounded heap as foods are scored, so a search matching thousands of foods
+ * never sorts or returns them all.
+ *
+ * Searches of all datasources search each one at the same time on a shared
+ * pool, each finding its own best hits, and merge the results, so a search
+ * takes as long as its largest datasource rather than all of them together.
+ *
+ * When nothing in any of the datasources searched matches the query as typed,
+ * they are searched again allowing for typing mistakes. Hits found that way
+ * are never mixed with exact matches.
+ *
+ * The foods matching each query are found through a <code>QueryCache</code>
+ * shared by all searches, so extending or trimming a query as it is typed
+ * filters recent matches instead of searching every datasource again.
+ *
+ * The time each completed search took to run is recorded, and can be read
+ * back as percentiles.
+ */
+public class SearchService {
+
+    private static final int LATENCY_SAMPLES = 1000;
+    private static final int CHECK_INTERVAL = 256; // hits scored between cancel checks
+
+    /**
+     * Receives the results of searches, on the event dispatch thread.
+     */
+    public interface Listener {
+        /**
+         * @param hits the best <code>SearchHit</code>s found, in display order
+         * @param total the number of foods that matched, which may be more than were returned
+         */
+        public void searchCompleted(List hits, int total);
+
+        /**
+         * Called instead of <code>searchCompleted()</code> when the latest
+         * search fails.
+         */
+        public void searchFailed();
+    }
+
+    /**
+     * A single search, which can be cancelled while it runs.
+     */
+    private class Search implements Runnable {
+        private String text;
+        private FoodDataSource source;
+        private Comparator order;
+        private int limit;
+        private int total;
+        private volatile boolean cancelled = false;
+
+        public void run() {
+            boolean delivered = false;
+            try {
+                long start = System.nanoTime();
+                final List hits = find(this);
+                if (hits == null) {
+                    if (cancelled) {
+                        recordCancel();
+                    }
+                    return;
+                }
+                recordLatency((System.nanoTime() - start) / 1000);
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (isLatest(Search.this)) {
+                            listener.searchCompleted(hits, total);
+                        }
+                    }
+                });
+                delivered = true;
+            } catch (RuntimeException e) {
+                Logger.error("Search failed", e);
+            } finally {
+                // the listener always hears how the latest search ended
+                if (!delivered) {
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            if (isLatest(Search.this)) {
+                                listener.searchFailed();
+                            }
+                        }
+                    });
+                }
+            }
+        }
+    }
+
+    private static QueryCache queryCache;
+    private static ExecutorService sourcePool;
+
+    private Listener listener;
+    private ScheduledExecutorService worker;
+    private Search latest;
+    private ScheduledFuture pending;
+
+    private long[] latencies = new long[LATENCY_SAMPLES]; // microseconds, most recent searches
+    private int latencyCount = 0;
+    private long completed = 0;
+    private long cancelled = 0;
+
+    public SearchService(Listener listener) {
+        this.listener = listener;
+        worker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "Food Search");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+    /**
+     * Start a search, replacing any search still waiting or running.
+     * @param text the user's search terms, as entered
+     * @param source the datasource to search, or null to search all of them
+     * @param order the order to sort results in
+     * @param limit the number of results to return
+     * @param delay milliseconds to wait before running the search, so that
+     *    bursts of keystrokes only run the last search
+     */
+    public synchronized void search(String text, FoodDataSource source, Comparator order, int limit, long delay) {
+        cancel();
+        Search s = new Search();
+        s.text = text.trim();
+        s.source = source;
+        s.order = order;
+        s.limit = limit;
+        latest = s;
+        pending = worker.schedule(s, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancel the current search, if any.
+     */
+    public synchronized void cancel() {
+        if (latest != null) {
+            latest.cancelled = true;
+            if (pending.cancel(false)) {
+                cancelled++;
+            }
+            latest = null;
+        }
+    }
+
+    /**
+     * Get the cache of query matches shared by all searches. It is cleared
+     * whenever the user's foods change.
+     */
+    public static synchronized QueryCache getQueryCache() {
+        if (queryCache == null) {
+            queryCache = new QueryCache();
+            Datasources.getUserFoods().addUserFoodsListener(queryCache);
+        }
+        return queryCache;
+    }
+
+    private synchronized boolean isLatest(Search s) {
+        return s == latest && !s.cancelled;
+    }
+
+    /**
+     * Find and score the matching foods, falling back to foods that match
+     * allowing for typos only when no datasource has an exact match.
+     * @return the sorted hits, or null if the search was cancelled or failed
+     */
+    private List find(Search s) {
+        String[] parts = FoodIndex.tokenize(s.text);
+        List hits = find(s, parts, false);
+        if (hits != null && s.total == 0 && s.text.length() > 0) {
+            hits = find(s, parts, true);
+        }
+        return hits;
+    }
+
+    /**
+     * Find and score the matching foods. When searching all datasources, each
+     * one is searched for its own best hits at the same time, and the sorted
+     * lists are then merged.
+     * @param similar true to find foods matching the query allowing for typos
+     * @return the sorted hits, or null if the search was cancelled or failed
+     */
+    private List find(Search s, String[] parts, boolean similar) {
+        List sources;
+        if (s.source != null) {
+            sources = Collections.singletonList(s.source);
+        } else {
+            sources = Datasources.getDatasources();
+        }
+        List searches = new ArrayList();
+        for (int i = 0; i < sources.size(); i++) {
+            searches.add(new SourceSearch(s, (FoodDataSource)sources.get(i), parts, similar));
+        }
+        List results = new ArrayList();
+        if (searches.size() == 1) {
+            results.add(((SourceSearch)searches.get(0)).call());
+        } else {
+            try {
+                List futures = getSourcePool().invokeAll(searches);
+                for (int i = 0; i < futures.size(); i++) {
+                    results.add(((Future)futures.get(i)).get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            } catch (ExecutionException e) {
+                Logger.error("Search failed", e);
+                return null;
+            }
+        }
+        s.total = 0;
+        for (int i = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                return null;
+            }
+            s.total += ((SourceSearch)searches.get(i)).total;
+        }
+        return merge(results, s.order, Math.max(1, s.limit));
+    }
+
+    /**
+     * Searches one datasource for its best hits.
+     */
+    private static class SourceSearch implements Callable<List> {
+        private Search search;
+        private FoodDataSource source;
+        private String[] parts;
+        private boolean similar;
+        private int total;
+
+        public SourceSearch(Search search, FoodDataSource source, String[] parts, boolean similar) {
+            this.search = search;
+            this.source = source;
+            this.parts = parts;
+            this.similar = similar;
+        }
+
+        /**
+         * Score the matching foods, keeping the best in a heap with the worst
+         * kept hit on top.
+         * @return the sorted hits, or null if the search was cancelled
+         */
+        public List call() {
+            Search s = search;
+            if (s.cancelled) {
+                return null;
+            }
+            List foods;
+            if (s.text.length() == 0) {
+                foods = source.getAllFoods();
+            } else if (similar) {
+                foods = getQueryCache().findSimilar(source, s.text);
+            } else {
+                foods = getQueryCache().find(source, s.text);
+            }
+            total = foods.size();
+            int limit = Math.max(1, s.limit);
+            PriorityQueue heap = new PriorityQueue(Math.min(limit, foods.size()) + 1,
+                                                   Collections.reverseOrder(s.order));
+            SearchHit hit = null;
+            for (int i = 0; i < foods.size(); i++) {
+                if (i % CHECK_INTERVAL == 0 && s.cancelled) {
+                    return null;
+                }
+                // a hit that did not make the cut is reused for the next food
+                if (hit == null) {
+                    hit = new SearchHit((FoodProxy)foods.get(i));
+                } else {
+                    hit.setFoodProxy((FoodProxy)foods.get(i));
+                }
+                hit.computeScore(parts);
+                if (heap.size() < limit) {
+                    heap.add(hit);
+                    hit = null;
+                } else if (s.order.compare(hit, heap.peek()) < 0) {
+                    SearchHit worst = (SearchHit)heap.poll();
+                    heap.add(hit);
+                    hit = worst;
+                }
+            }
+            if (s.cancelled) {
+                return null;
+            }
+            List hits = new ArrayList(heap);
+            Collections.sort(hits, s.order);
+            return hits;
+        }
+    }
+
+    /**
+     * Merge sorted lists of hits, taking the first of them in order.
+     * @param lists the lists to merge, each sorted by <code>order</code>
+     * @param order the order of the lists and the result
+     * @param limit the number of hits to take
+     */
+    private static List merge(final List lists, final Comparator order, int limit) {
+        if (lists.size() == 1) {
+            List hits = (List)lists.get(0);
+            return hits.size() > limit ? new ArrayList(hits.subList(0, limit)) : hits;
+        }
+        // positions[i] is the next hit to take from list i
+        final int[] positions = new int[lists.size()];
+        PriorityQueue heads = new PriorityQueue(lists.size(), new Comparator() {
+            public int compare(Object a, Object b) {
+                int i = ((Integer)a).intValue(), j = ((Integer)b).intValue();
+                return order.compare(((List)lists.get(i)).get(positions[i]),
+                                     ((List)lists.get(j)).get(positions[j]));
+            }
+        });
+        for (int i = 0; i < lists.size(); i++) {
+            if (((List)lists.get(i)).size() > 0) {
+                heads.add(Integer.valueOf(i));
+            }
+        }
+        List hits = new ArrayList();
+        while (hits.size() < limit && !heads.isEmpty()) {
+            Integer next = (Integer)heads.poll();
+            int i = next.intValue();
+            List list = (List)lists.get(i);
+            hits.add(list.get(positions[i]++));
+            if (positions[i] < list.size()) {
+                heads.add(next);
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Get the pool datasources are searched on when searching all of them.
+     */
+    private static synchronized ExecutorService getSourcePool() {
+        if (sourcePool == null) {
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            sourcePool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Food Search Source");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return sourcePool;
+    }
+
+    private synchronized void recordLatency(long micros) {
+        latencies[(int)(completed % LATENCY_SAMPLES)] = micros;
+        latencyCount = Math.min(latencyCount + 1, LATENCY_SAMPLES);
+        completed++;
+    }
+
+    private synchronized void recordCancel() {
+        cancelled++;
+    }
+
+    /**
+     * Get a percentile of the time recent searches took to run.
+     * @param percentile from 0 to 100
+     * @return the time in milliseconds, or 0 if no search has completed
+     */
+    public synchronized double getLatencyPercentile(double percentile) {
+        if (latencyCount == 0) {
+            return 0;
+        }
+        long[] sorted = new long[latencyCount];
+        System.arraycopy(latencies, 0, sorted, 0, latencyCount);
+        Arrays.sort(sorted);
+        int index = (int)Math.ceil(percentile / 100.0 * latencyCount) - 1;
+        index = Math.max(0, Math.min(latencyCount - 1, index));
+        return sorted[index] / 1000.0;
+    }
+
+    /**
+     * Get the number of searches that ran to completion.
+     */
+    public synchronized long getCompletedCount() {
+        return completed;
+    }
+
+    /**
+     * Get the number of searches replaced before they could finish.
+     */
+    public synchronized long getCancelledCount() {
+        return cancelled;
+    }
+
+    public synchronized String toString() {
+        return "SearchService[" + completed + " completed, " + cancelled + " cancelled, p50 "
+            + getLatencyPercentile(50) + " ms, p90 " + getLatencyPercentile(90)
+            + " ms, p99 " + getLatencyPercentile(99) + " ms]";
+    }
+}
@@ -59,11 +59,19 @@ public class User {
     private static final String CU_CARBS_PERC = "carb.perc";
     private static final String CU_FAT_PERC = "fat.perc";
 
-    private FoodHistory foodHist;
-    private NotesHistory noteHist;
-    private BiometricsHistory bioHist;
+    // histories may be loaded on a background thread at startup
+    private volatile FoodHistory foodHist;
+    private volatile NotesHistory noteHist;
+    private volatile BiometricsHistory bioHist;
     private BiomarkerDefinitions bioDefs;
-    private ExerciseHistory exerciseHist;
+    private volatile ExerciseHistory exerciseHist;
+
+    // each history has its own lock, so a history that is quick to load is
+    // not held up while another one is still loading
+    private final Object foodHistLock = new Object();
+    private final Object noteHistLock = new Object();
+    private final Object bioHistLock = new Object();
+    private final Object exerciseHistLock = new Object();
 
     private String username;
     private Date birthDate;
@@ -398,16 +406,18 @@ public class User {
      * Initialise the User specific data sources.
      */
     public void initUserData() {
-        getFoodHistory();
         getNotesHistory();
         getBiometricsHistory();
+        getFoodHistory(); // last, as it waits for the food databases
     }
 
     public BiometricsHistory getBiometricsHistory() {
-        if (bioHist == null) {
-            bioHist = new BiometricsHistory();
+        synchronized (bioHistLock) {
+            if (bioHist == null) {
+                bioHist = new BiometricsHistory();
+            }
+            return bioHist;
         }
-        return bioHist;
     }
 
     public BiomarkerDefinitions getBiomarkerDefinitions() {
@@ -418,34 +428,49 @@ public class User {
     }
 
     public FoodHistory getFoodHistory() {
-        if (foodHist == null) {
-            foodHist = new FoodHistory();
+        synchronized (foodHistLock) {
+            if (foodHist == null) {
+                foodHist = new FoodHistory();
+            }
+            return foodHist;
         }
-        return foodHist;
     }
 
     public ExerciseHistory getExerciseHistory() {
-        if (exerciseHist == null) {
-            exerciseHist = new ExerciseHistory();
+        synchronized (exerciseHistLock) {
+            if (exerciseHist == null) {
+                exerciseHist = new ExerciseHistory();
+            }
+            return exerciseHist;
         }
-        return exerciseHist;
     }
 
     public NotesHistory getNotesHistory() {
-        if (noteHist == null) {
-            noteHist = new NotesHistory();
+        synchronized (noteHistLock) {
+            if (noteHist == null) {
+                noteHist = new NotesHistory();
+            }
+            return noteHist;
         }
-        return noteHist;
     }
 
     /**
-     * Ensure all data is saved to backing stores.
+     * Ensure all data is saved to backing stores. Histories that were never
+     * loaded have nothing to save.
      */
     public void saveUserData() {
-        getFoodHistory().save();
-        getBiometricsHistory().save();
-        getNotesHistory().save();
-        getExerciseHistory().save();
+        if (foodHist != null) {
+            foodHist.save();
+        }
+        if (bioHist != null) {
+            bioHist.save();
+        }
+        if (noteHist != null) {
+            noteHist.save();
+        }
+        if (exerciseHist != null) {
+            exerciseHist.save();
+        }
     }
 
     public String getNotes(Date date) {
@@ -0,0 +1,116 @@
+package ca.spaz.cron.user;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import ca.spaz.util.Logger;
+
+/**
+ * Saves user data on a background thread, so the event dispatch thread never
+ * waits on disk. Requests to save a user that is already waiting to be saved
+ * are merged into the pending save.
+ *
+ * Keeps simple statistics on save latency and the number of waiting saves.
+ */
+public class UserDataSaver {
+
+    private static ExecutorService executor;
+    private static Set<User> pending = new LinkedHashSet<User>();
+
+    private static long requests = 0;
+    private static long coalesced = 0;
+    private static long saves = 0;
+    private static long totalTime = 0;
+    private static long maxTime = 0;
+    private static long lastTime = 0;
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "User Data Saver");
+                    t.setDaemon(true);
+                    t.setPriority(Thread.MIN_PRIORITY);
+                    return t;
+                }
+            });
+        }
+        return executor;
+    }
+
+    /**
+     * Save a user's data in the background.
+     */
+    public static synchronized void requestSave(final User user) {
+        requests++;
+        if (!pending.add(user)) {
+            coalesced++;
+            return;
+        }
+        getExecutor().execute(new Runnable() {
+            public void run() {
+                synchronized (UserDataSaver.class) {
+                    pending.remove(user);
+                }
+                long start = System.nanoTime();
+                try {
+                    user.saveUserData();
+                } catch (Exception e) {
+                    Logger.error("Error saving user data", e);
+                }
+                recordSave((System.nanoTime() - start) / 1000000);
+            }
+        });
+    }
+
+    private static synchronized void recordSave(long time) {
+        saves++;
+        totalTime += time;
+        lastTime = time;
+        maxTime = Math.max(maxTime, time);
+        Logger.debug("Saved user data in " + time + " msec (" + pending.size() + " waiting)");
+    }
+
+    /**
+     * Get the number of saves waiting to run.
+     */
+    public static synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    /**
+     * Get the number of save requests merged into an already waiting save.
+     */
+    public static synchronized long getCoalescedCount() {
+        return coalesced;
+    }
+
+    public static synchronized long getRequestCount() {
+        return requests;
+    }
+
+    public static synchronized long getSaveCount() {
+        return saves;
+    }
+
+    /**
+     * Get the time taken by the last save, in milliseconds.
+     */
+    public static synchronized long getLastSaveTime() {
+        return lastTime;
+    }
+
+    /**
+     * Get the longest time taken by a save, in milliseconds.
+     */
+    public static synchronized long getMaxSaveTime() {
+        return maxTime;
+    }
+
+    /**
+     * Get the average time taken by a save, in milliseconds.
+     */
+    public static synchronized double getAverageSaveTime() {
+        return saves == 0 ? 0 : totalTime / (double)saves;
+    }
+}
@@ -55,7 +55,8 @@ public class UserManager {
 
     // TODO: Should not hardcode these
     public static final String userFileList[] = {
-        "biomarkers.xml", "metrics.xml", "notes.xml", "servings.xml"
+        "biomarkers.xml", "metrics.xml", "notes.xml", "servings.xml", "exercises.xml",
+        "metrics", "notes", "servings", "exercises"
     };
 
     public static final UserManager getUserManager() {
@@ -177,7 +178,11 @@ public class UserManager {
             int i;
             for (i = 0; i < userFileList.length; i++) {
                 File userFile = new File(userDir.getAbsolutePath(), userFileList[i]);
-                if (userFile.exists()) {
+                if (userFile.isDirectory()) {
+                    if (!ToolBox.deleteDir(userFile)) {
+                        Logger.error("Unable to delete the folder: " + userFile.getAbsolutePath());
+                    }
+                } else if (userFile.exists()) {
                     if (!userFile.delete()) {
                         Logger.error("Unable to delete the file: " + userFile.getAbsolutePath());
                     }
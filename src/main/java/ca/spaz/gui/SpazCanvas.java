@@ -10,10 +10,11 @@ import java.util.Hashtable;
 import javax.swing.*;
 import javax.swing.border.*;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.*;
 
+import ca.spaz.util.XMLParsers;
+
 /**
  * An XML definition of a GUI layout.
  *
@@ -49,11 +50,14 @@ public class SpazCanvas extends JPanel implements ActionListener {
 
     public void loadXML(String fname) {
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
             File f = new File(fname);
-            Document d = db.parse(f);
+            DocumentBuilder db = XMLParsers.acquireDocumentBuilder();
+            Document d;
+            try {
+                d = db.parse(f);
+            } finally {
+                XMLParsers.release(db);
+            }
             Element e = d.getDocumentElement();
             parseChildren(e);
         } catch (Exception e) {
@@ -0,0 +1,74 @@
+package ca.spaz.gui;
+
+import java.awt.*;
+
+import javax.swing.*;
+
+import ca.spaz.util.Logger;
+import ca.spaz.util.ProgressListener;
+
+/**
+ * A small undecorated window showing the progress of loading at startup.
+ * Progress may be reported from any thread. The window closes itself when
+ * loading finishes, and logs how long loading took.
+ */
+public class SplashWindow extends JWindow implements ProgressListener {
+    private static final long serialVersionUID = 1L;
+
+    private JProgressBar progressBar;
+    private String title;
+    private long startTime;
+
+    public SplashWindow(Image image, String title) {
+        this.title = title;
+        JPanel panel = new JPanel(new BorderLayout(8, 8));
+        panel.setBorder(BorderFactory.createCompoundBorder(
+                            BorderFactory.createLineBorder(Color.GRAY),
+                            BorderFactory.createEmptyBorder(12, 12, 12, 12)));
+        panel.setBackground(Color.WHITE);
+        if (image != null) {
+            panel.add(new JLabel(new ImageIcon(image)), BorderLayout.CENTER);
+        }
+        JLabel label = new JLabel("Loading " + title + "...", SwingConstants.CENTER);
+        panel.add(label, BorderLayout.NORTH);
+        panel.add(getProgressBar(), BorderLayout.SOUTH);
+        getContentPane().add(panel);
+        pack();
+        setLocationRelativeTo(null);
+    }
+
+    private JProgressBar getProgressBar() {
+        if (progressBar == null) {
+            progressBar = new JProgressBar(0, 100);
+            progressBar.setStringPainted(true);
+        }
+        return progressBar;
+    }
+
+    public void progressStart() {
+        startTime = System.currentTimeMillis();
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                setVisible(true);
+            }
+        });
+    }
+
+    public void progress(final int percent) {
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                getProgressBar().setValue(percent);
+            }
+        });
+    }
+
+    public void progressFinish() {
+        Logger.debug(title + " loaded in " + (System.currentTimeMillis() - startTime) + " msec");
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run() {
+                setVisible(false);
+                dispose();
+            }
+        });
+    }
+}
@@ -14,7 +14,6 @@ package ca.spaz.util;
 import java.awt.Image;
 import java.awt.Toolkit;
 import java.net.URL;
-import java.util.Map;
 
 /**
  * A class for manufacturing images from the resource path.
@@ -24,11 +23,11 @@ public class ImageFactory {
 
     private static ImageFactory instance = null;
     private int cacheSize;
-    private Map imageCache;
+    private LRUCache<URL, Image> imageCache;
 
     private ImageFactory(int cacheSz) {
         this.cacheSize = cacheSz;
-        this.imageCache = new CacheMap(cacheSize);
+        this.imageCache = new LRUCache<URL, Image>(cacheSize);
     }
 
     public static final ImageFactory getInstance() {
@@ -39,16 +38,18 @@ public class ImageFactory {
     }
 
     public Image loadImage(URL url) {
-        Image ret = null;
-        if (imageCache.containsKey(url)) {
-            ret = (Image) imageCache.get(url);
-        } else {
-            ret = Toolkit.getDefaultToolkit().createImage(url);
-            if (ret != null) {
-                imageCache.put(url, ret);
+        return imageCache.get(url, new LRUCache.Loader<URL, Image>() {
+            public Image load(URL u) {
+                return Toolkit.getDefaultToolkit().createImage(u);
             }
-        }
-        return ret;
+        });
+    }
+
+    /**
+     * Get the cache of loaded images, to read its statistics.
+     */
+    public LRUCache<URL, Image> getImageCache() {
+        return imageCache;
     }
 
     public Image loadImage(String resourceID) {
@@ -0,0 +1,235 @@
+package ca.spaz.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * A cache that holds values up to a total weight, evicting the least recently
+ * used values first. Lookups, insertions and evictions take constant time.
+ *
+ * By default every value weighs one, so the budget is simply a number of
+ * entries; a <code>Weigher</code> can be given to budget by estimated memory
+ * use instead.
+ *
+ * Values can be loaded on a miss with <code>get(key, loader)</code>. If
+ * several threads miss on the same key at once, only one of them loads it and
+ * the others wait for its result.
+ *
+ * Hits, misses, loads and evictions are counted, for tuning the budget.
+ */
+public class LRUCache<K, V> {
+
+    /**
+     * Loads a value missing from the cache.
+     */
+    public interface Loader<K, V> {
+        /**
+         * @return the value, or null if there is none (null is not cached)
+         */
+        public V load(K key);
+    }
+
+    /**
+     * Estimates the cost of holding a value in the cache.
+     */
+    public interface Weigher<K, V> {
+        public long weigh(K key, V value);
+    }
+
+    private static class Entry<V> {
+        private V value;
+        private long weight;
+    }
+
+    private LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+    private HashMap<K, FutureTask<V>> loading = new HashMap<K, FutureTask<V>>();
+    private Weigher<K, V> weigher;
+    private long maxWeight;
+    private long weight = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long loads = 0;
+    private long evictions = 0;
+
+    /**
+     * Create a cache holding up to the given number of values.
+     */
+    public LRUCache(long maxSize) {
+        this(maxSize, null);
+    }
+
+    /**
+     * Create a cache holding values up to the given total weight.
+     * @param maxWeight the total weight of values to hold
+     * @param weigher estimates the weight of each value, or null to weigh each as one
+     */
+    public LRUCache(long maxWeight, Weigher<K, V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Get a cached value, marking it as recently used.
+     * @return the value, or null if it is not in the cache
+     */
+    public synchronized V get(K key) {
+        Entry<V> e = map.get(key);
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return e.value;
+    }
+
+    /**
+     * Get a value, loading and caching it if it is not in the cache. Only one
+     * load of a key runs at a time; other callers wait for its result.
+     * @return the value, or null if the loader had none
+     */
+    public V get(final K key, final Loader<K, V> loader) {
+        FutureTask<V> task;
+        boolean owner = false;
+        synchronized (this) {
+            V value = get(key);
+            if (value != null) {
+                return value;
+            }
+            task = loading.get(key);
+            if (task == null) {
+                task = new FutureTask<V>(new Callable<V>() {
+                    public V call() {
+                        return loader.load(key);
+                    }
+                });
+                loading.put(key, task);
+                owner = true;
+            }
+        }
+        V value = null;
+        try {
+            if (owner) {
+                task.run();
+            }
+            value = task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (owner) {
+                synchronized (this) {
+                    loading.remove(key);
+                    loads++;
+                    if (value != null) {
+                        put(key, value);
+                    }
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Add or replace a value, evicting the least recently used values if the
+     * cache is over its budget. The newest value is always kept.
+     */
+    public synchronized void put(K key, V value) {
+        Entry<V> e = new Entry<V>();
+        e.value = value;
+        e.weight = (weigher == null) ? 1 : weigher.weigh(key, value);
+        Entry<V> old = map.put(key, e);
+        if (old != null) {
+            weight -= old.weight;
+        }
+        weight += e.weight;
+        evict();
+    }
+
+    public synchronized V remove(K key) {
+        Entry<V> e = map.remove(key);
+        if (e == null) {
+            return null;
+        }
+        weight -= e.weight;
+        return e.value;
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    private void evict() {
+        Iterator<Entry<V>> iter = map.values().iterator();
+        while (weight > maxWeight && map.size() > 1) {
+            Entry<V> e = iter.next();
+            iter.remove();
+            weight -= e.weight;
+            evictions++;
+        }
+    }
+
+    /**
+     * Change the budget, evicting values if the cache is now over it.
+     */
+    public synchronized void setMaxWeight(long maxWeight) {
+        this.maxWeight = maxWeight;
+        evict();
+    }
+
+    public synchronized long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Get the total weight of the values in the cache.
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * Get the number of values loaded on a miss.
+     */
+    public synchronized long getLoadCount() {
+        return loads;
+    }
+
+    /**
+     * Get the number of values dropped to stay within the budget.
+     */
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    public synchronized double getHitRate() {
+        long total = hits + misses;
+        return total == 0 ? 0 : hits / (double)total;
+    }
+
+    public synchronized String toString() {
+        return "LRUCache[" + map.size() + " entries, weight " + weight + "/" + maxWeight
+            + ", " + hits + " hits, " + misses + " misses, " + evictions + " evictions]";
+    }
+}
@@ -228,49 +228,48 @@ public class Settings implements Serializable {
      */
     public synchronized void save() {
         try {
-            PrintStream ps = new PrintStream(
-                new BufferedOutputStream(new FileOutputStream(file)));
-            writeXML(ps);
-            ps.close();
+            XMLWriter out = new XMLWriter(new FileOutputStream(file));
+            writeXML(out);
+            out.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
         dirty = false;
     }
 
-    public synchronized void writeXML(PrintStream out) {
-        XMLNode node = new XMLNode("Settings");
+    public synchronized void writeXML(XMLWriter out) throws IOException {
+        out.setPrintNewLines(true);
+        out.startElement("Settings");
 
         // Save the General settings
-        settingsToXML(node, generalSettings, null);
+        writeSettings(out, generalSettings, null);
 
         // Save the user settings
         Iterator<User> ul = UserManager.getUserList().listIterator();
         while (ul.hasNext()) {
             User user = ul.next();
-            settingsToXML(node, user.getSettings(), user.getUsername());
+            writeSettings(out, user.getSettings(), user.getUsername());
         }
-        node.setPrintNewLines(true);
-        node.write(out);
+        out.endElement();
     }
 
     /**
-     * Add the settings to the given XMLNode.
-     * @param node the XMLNode where all the settings will be stored
+     * Write the settings as children of the current element.
+     * @param out the XMLWriter where all the settings will be written
      * @param settings
      * @param username
      */
-    private synchronized void settingsToXML(XMLNode node, Settings settings, String username) {
+    private synchronized void writeSettings(XMLWriter out, Settings settings, String username) throws IOException {
         Enumeration e = settings.map.keys();
         while (e.hasMoreElements()) {
             String key = (String)e.nextElement();
-            XMLNode sNode = new XMLNode(settings.settingTag);
+            out.startElement(settings.settingTag);
             if (settings.isUserSettings()) {
-                sNode.addAttribute("username", username);
+                out.addAttribute("username", username);
             }
-            sNode.addAttribute("name", key);
-            sNode.addAttribute("value", settings.getSetting(key));
-            node.addChild(sNode);
+            out.addAttribute("name", key);
+            out.addAttribute("value", settings.getSetting(key));
+            out.endElement();
         }
     }
 
@@ -324,10 +323,13 @@ public class Settings implements Serializable {
         ArrayList<User> userList = new ArrayList<User>();
 
         try {
-            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-            dbf.setNamespaceAware(true);
-            DocumentBuilder db = dbf.newDocumentBuilder();
-            Document d = db.parse(in);
+            DocumentBuilder db = XMLParsers.acquireDocumentBuilder();
+            Document d;
+            try {
+                d = db.parse(in);
+            } finally {
+                XMLParsers.release(db);
+            }
             Element e = d.getDocumentElement();
 
             NodeList nl = e.getElementsByTagName(TAG_GENERAL);
@@ -230,14 +230,16 @@ public class ToolBox {
      * @return true if the two dates fall on the same calendar day.
      */
     public static boolean isSameDay(Date a, Date b) {
-        Calendar aC = new GregorianCalendar(TimeZone.getDefault());
-        aC.setTime(a);
-        Calendar bC = new GregorianCalendar(TimeZone.getDefault());
-        bC.setTime(b);
-        return
-            (aC.get(Calendar.DATE) == bC.get(Calendar.DATE)) &&
-            (aC.get(Calendar.MONTH) == bC.get(Calendar.MONTH)) &&
-            (aC.get(Calendar.YEAR) == bC.get(Calendar.YEAR));
+        return getDayNumber(a) == getDayNumber(b);
+    }
+
+    /**
+     * Get the number of the calendar day a date falls on, in the default time
+     * zone, counting from the epoch. Consecutive days have consecutive numbers.
+     */
+    public static long getDayNumber(Date d) {
+        long time = d.getTime();
+        return Math.floorDiv(time + TimeZone.getDefault().getOffset(time), 24 * 60 * 60 * 1000L);
     }
 
     /**
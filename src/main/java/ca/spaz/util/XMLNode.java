@@ -1,6 +1,6 @@
 package ca.spaz.util;
 
-import java.io.PrintStream;
+import java.io.*;
 import java.util.*;
 
 import org.w3c.dom.*;
@@ -85,6 +85,26 @@ public class XMLNode {
         out.print(toString());
     }
 
+    /**
+     * Stream this node, and its children, to an XML writer.
+     */
+    public void write(XMLWriter out) throws IOException {
+        out.setPrintNewLines(printNewLines);
+        out.startElement(name);
+        Iterator iter = attrs.keySet().iterator();
+        while (iter.hasNext()) {
+            String key = (String)iter.next();
+            out.addAttribute(key, (String)attrs.get(key));
+        }
+        out.addText(text);
+        iter = children.iterator();
+        while (iter.hasNext()) {
+            ((XMLNode)iter.next()).write(out);
+        }
+        out.setPrintNewLines(printNewLines);
+        out.endElement();
+    }
+
     public String toString() {
         boolean singleton = (children.size() == 0 && text == null);
         StringBuffer sb = new StringBuffer();
@@ -141,43 +161,13 @@ public class XMLNode {
         if (string == null) {
             return null;
         }
-        StringBuffer sb = new StringBuffer(string.length());
-        int len = string.length();
-        char c;
-
-        for (int i = 0; i < len; i++) {
-            // we let spaces be
-            c = string.charAt(i);
-            if (c == '"') {
-                sb.append("&quot;");
-            } else if (c == '&') {
-                sb.append("&amp;");
-            } else if (c == '<') {
-                sb.append("&lt;");
-            } else if (c == '>') {
-                sb.append("&gt;");
-            } else if (c == '\u201C') {
-                sb.append("&quot;");
-            } else if (c == '\u201D') {
-                sb.append("&quot;");
-            } else if (c == '\u2018') {
-                sb.append("'");
-            } else if (c == '\u2019') {
-                sb.append("'");
-            } else {
-                int ci = 0xffff & c;
-                if (ci < 160) {
-                    // nothing special only 7 Bit
-                    sb.append(c);
-                } else {
-                    // Not 7 Bit use the unicode system
-                    sb.append("&#");
-                    sb.append(new Integer(ci).toString());
-                    sb.append(';');
-                }
-            }
+        StringWriter sw = new StringWriter(string.length());
+        try {
+            XMLWriter.escape(string, sw);
+        } catch (IOException e) {
+            // can not happen when writing to a string
         }
-        return sb.toString();
+        return sw.toString();
     }
 
     public static String getString(Attributes e, String name) {
@@ -260,6 +250,14 @@ public class XMLNode {
         }
     }
 
+    public static long getLong(Attributes e, String name, long defval) {
+        if (e.getValue(name) != null) {
+            return getLong(e, name);
+        } else {
+            return defval;
+        }
+    }
+
     public static double getDouble(Element e, String name, double defval) {
         if (e.hasAttribute(name)) {
             return getDouble(e, name);
@@ -0,0 +1,103 @@
+package ca.spaz.util;
+
+import java.util.ArrayList;
+
+import javax.xml.parsers.*;
+
+import org.xml.sax.SAXException;
+
+/**
+ * Keeps parsers for reuse, so loading many small XML files does not pay for
+ * looking up a parser factory and building a new parser each time.
+ *
+ * Parsers are kept per thread, since they are not thread safe. A parser is
+ * taken with <code>acquire</code> and must be handed back with
+ * <code>release</code> once the parse is done; a parse started while another
+ * is running on the same thread (such as a food loaded while reading a recipe)
+ * simply takes a second parser.
+ * <pre>
+ *    SAXParser parser = XMLParsers.acquireSAXParser();
+ *    try {
+ *       parser.parse(in, handler);
+ *    } finally {
+ *       XMLParsers.release(parser);
+ *    }
+ * </pre>
+ */
+public class XMLParsers {
+
+    private static SAXParserFactory saxFactory;
+    private static DocumentBuilderFactory domFactory;
+
+    private static ThreadLocal<ArrayList<SAXParser>> saxParsers = new ThreadLocal<ArrayList<SAXParser>>() {
+        protected ArrayList<SAXParser> initialValue() {
+            return new ArrayList<SAXParser>();
+        }
+    };
+
+    private static ThreadLocal<ArrayList<DocumentBuilder>> domBuilders = new ThreadLocal<ArrayList<DocumentBuilder>>() {
+        protected ArrayList<DocumentBuilder> initialValue() {
+            return new ArrayList<DocumentBuilder>();
+        }
+    };
+
+    private static synchronized SAXParserFactory getSAXFactory() {
+        if (saxFactory == null) {
+            saxFactory = SAXParserFactory.newInstance();
+            saxFactory.setNamespaceAware(true);
+        }
+        return saxFactory;
+    }
+
+    private static synchronized DocumentBuilderFactory getDOMFactory() {
+        if (domFactory == null) {
+            domFactory = DocumentBuilderFactory.newInstance();
+            domFactory.setNamespaceAware(true);
+        }
+        return domFactory;
+    }
+
+    /**
+     * Take a namespace aware SAX parser for use on the current thread.
+     */
+    public static SAXParser acquireSAXParser() throws ParserConfigurationException, SAXException {
+        ArrayList<SAXParser> free = saxParsers.get();
+        if (!free.isEmpty()) {
+            return free.remove(free.size() - 1);
+        }
+        SAXParserFactory factory = getSAXFactory();
+        synchronized (factory) {
+            return factory.newSAXParser();
+        }
+    }
+
+    /**
+     * Take a namespace aware DOM document builder for use on the current thread.
+     */
+    public static DocumentBuilder acquireDocumentBuilder() throws ParserConfigurationException {
+        ArrayList<DocumentBuilder> free = domBuilders.get();
+        if (!free.isEmpty()) {
+            return free.remove(free.size() - 1);
+        }
+        DocumentBuilderFactory factory = getDOMFactory();
+        synchronized (factory) {
+            return factory.newDocumentBuilder();
+        }
+    }
+
+    /**
+     * Hand back a parser taken on the current thread, for reuse.
+     */
+    public static void release(SAXParser parser) {
+        parser.reset();
+        saxParsers.get().add(parser);
+    }
+
+    /**
+     * Hand back a document builder taken on the current thread, for reuse.
+     */
+    public static void release(DocumentBuilder builder) {
+        builder.reset();
+        domBuilders.get().add(builder);
+    }
+}
@@ -0,0 +1,183 @@
+package ca.spaz.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+
+/**
+ * Writes XML directly to a stream as it is produced, in the same format as
+ * <code>XMLNode</code>, without building a tree of nodes or intermediate
+ * strings first.
+ *
+ * An element is opened with <code>startElement()</code>, given its attributes,
+ * then either text or child elements, and closed with <code>endElement()</code>:
+ * <pre>
+ *    out.startElement("serving");
+ *    out.addAttribute("grams", 100.0);
+ *    out.endElement();
+ * </pre>
+ */
+public class XMLWriter {
+    private Writer out;
+    private ArrayList<String> open = new ArrayList<String>();
+    private boolean inStartTag = false;
+    private boolean printNewLines = false;
+
+    public XMLWriter(Writer out) {
+        this.out = out;
+    }
+
+    /**
+     * Write to a byte stream, encoded as UTF-8.
+     */
+    public XMLWriter(OutputStream out) {
+        this(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Set if this will format output with newlines or not
+     */
+    public void setPrintNewLines(boolean b) {
+        printNewLines = b;
+    }
+
+    public void startElement(String name) throws IOException {
+        if (inStartTag) {
+            closeStartTag(true);
+        }
+        if (printNewLines && !open.isEmpty()) {
+            out.write(' ');
+        }
+        out.write('<');
+        out.write(name);
+        open.add(name);
+        inStartTag = true;
+    }
+
+    public void addAttribute(String key, String val) throws IOException {
+        if (!inStartTag) {
+            throw new IllegalStateException("Attribute outside of a start tag: " + key);
+        }
+        if (val == null) {
+            return;
+        }
+        out.write(' ');
+        out.write(key);
+        out.write("=\"");
+        escape(val, out);
+        out.write('"');
+    }
+
+    public void addAttribute(String key, Object val) throws IOException {
+        if (val != null) {
+            addAttribute(key, val.toString());
+        }
+    }
+
+    public void addAttribute(String key, int val) throws IOException {
+        addAttribute(key, Integer.toString(val));
+    }
+
+    public void addAttribute(String key, long val) throws IOException {
+        addAttribute(key, Long.toString(val));
+    }
+
+    public void addAttribute(String key, double val) throws IOException {
+        addAttribute(key, Double.toString(val));
+    }
+
+    public void addAttribute(String key, boolean val) throws IOException {
+        addAttribute(key, Boolean.toString(val));
+    }
+
+    /**
+     * Write the text content of the current element.
+     */
+    public void addText(String text) throws IOException {
+        if (text == null) {
+            return;
+        }
+        if (inStartTag) {
+            closeStartTag(false);
+        }
+        escape(text, out);
+    }
+
+    /**
+     * Close the most recently started element.
+     */
+    public void endElement() throws IOException {
+        if (open.isEmpty()) {
+            throw new IllegalStateException("No element to end");
+        }
+        String name = open.remove(open.size() - 1);
+        if (inStartTag) {
+            out.write("/>");
+            inStartTag = false;
+        } else {
+            out.write("</");
+            out.write(name);
+            out.write('>');
+        }
+        if (printNewLines) {
+            out.write('\n');
+        }
+    }
+
+    private void closeStartTag(boolean children) throws IOException {
+        out.write('>');
+        if (printNewLines && children) {
+            out.write('\n');
+        }
+        inStartTag = false;
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Escape special XML characters from a string as it is written,
+     * using the same rules as <code>XMLNode.escapeXML()</code>.
+     * @param string the unescaped string
+     * @param out where to write the safe string
+     */
+    public static void escape(String string, Writer out) throws IOException {
+        int len = string.length();
+        int start = 0; // start of the run of characters that need no escaping
+        for (int i = 0; i < len; i++) {
+            char c = string.charAt(i);
+            String entity;
+            if (c == '"' || c == '\u201C' || c == '\u201D') {
+                entity = "&quot;";
+            } else if (c == '&') {
+                entity = "&amp;";
+            } else if (c == '<') {
+                entity = "&lt;";
+            } else if (c == '>') {
+                entity = "&gt;";
+            } else if (c == '\u2018' || c == '\u2019') {
+                entity = "'";
+            } else if (c < 160) {
+                continue;
+            } else {
+                entity = null;
+            }
+            out.write(string, start, i - start);
+            if (entity != null) {
+                out.write(entity);
+            } else {
+                // Not 7 Bit use the unicode system
+                out.write("&#");
+                out.write(Integer.toString(c));
+                out.write(';');
+            }
+            start = i + 1;
+        }
+        out.write(string, start, len - start);
+    }
+}
@@ -0,0 +1,88 @@
+package ca.spaz.cron.datasource;
+
+import java.io.*;
+import java.util.Arrays;
+
+import javax.xml.parsers.*;
+
+import org.w3c.dom.Document;
+
+import ca.spaz.cron.foods.*;
+
+/**
+ * Compares the cost of parsing individual XML food files with the streaming
+ * SAX loader against the old approach of building a new DOM parser and
+ * document for every food. Every food in a food database directory is read
+ * into memory first, so only parsing is timed.
+ *
+ * <pre>
+ *    java ca.spaz.cron.datasource.FoodParseBenchmark [directory]
+ * </pre>
+ */
+public class FoodParseBenchmark {
+
+    private static final int RUNS = 5;
+
+    private static byte[][] files;
+
+    private static Food parseDOM(byte[] data) throws Exception {
+        DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+        dbf.setNamespaceAware(true);
+        DocumentBuilder db = dbf.newDocumentBuilder();
+        Document d = db.parse(new ByteArrayInputStream(data));
+        if (!d.getDocumentElement().getNodeName().equals("food")) {
+            return null; // recipes need the datasources to load their servings
+        }
+        return XMLFoodLoader.loadFood(d.getDocumentElement());
+    }
+
+    private static Food parseSAX(byte[] data) throws Exception {
+        return XMLFoodLoader.loadFood(new ByteArrayInputStream(data), false);
+    }
+
+    private static void run(String name, boolean dom) throws Exception {
+        long best = Long.MAX_VALUE;
+        int count = 0;
+        for (int r = 0; r < RUNS; r++) {
+            count = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < files.length; i++) {
+                Food f = dom ? parseDOM(files[i]) : parseSAX(files[i]);
+                if (f != null) {
+                    count++;
+                }
+            }
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        System.out.println(name + ": " + count + " foods in " + (best / 1000000) + " msec, "
+                           + (best / 1000 / Math.max(count, 1)) + " usec per food");
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dir = new File(args.length > 0 ? args[0] : "src/main/resources/usda_sr28");
+        File[] list = dir.listFiles(new FilenameFilter() {
+            public boolean accept(File d, String name) {
+                return name.endsWith(".xml");
+            }
+        });
+        if (list == null) {
+            System.err.println("No food files in " + dir);
+            System.exit(1);
+        }
+        Arrays.sort(list);
+        files = new byte[list.length][];
+        long bytes = 0;
+        for (int i = 0; i < list.length; i++) {
+            files[i] = new byte[(int)list[i].length()];
+            DataInputStream in = new DataInputStream(new FileInputStream(list[i]));
+            in.readFully(files[i]);
+            in.close();
+            bytes += files[i].length;
+        }
+        NutrientInfo.getGlobalList();
+        System.out.println(files.length + " files, " + (bytes / 1024) + " KB");
+        run("DOM", true);
+        run("SAX", false);
+        System.exit(0);
+    }
+}
@@ -0,0 +1,137 @@
+package ca.spaz.cron.records;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import javax.xml.parsers.*;
+
+import org.w3c.dom.*;
+
+import ca.spaz.cron.datasource.*;
+import ca.spaz.cron.foods.FoodHistory;
+
+/**
+ * Compares loading a large food history with the streaming SAX loader against
+ * the old approach of parsing the whole file into a DOM first. A synthetic
+ * diary of ten years of servings of random USDA foods is written to a
+ * temporary file, and each loader is timed over several runs along with the
+ * peak heap it used.
+ *
+ * <pre>
+ *    java ca.spaz.cron.records.HistoryLoadBenchmark [years] [servings per day]
+ * </pre>
+ */
+public class HistoryLoadBenchmark {
+
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+    private static final int RUNS = 5;
+
+    private static File file;
+    private static boolean useDOM;
+
+    /**
+     * A food history read from the benchmark file.
+     */
+    private static class BenchmarkHistory extends FoodHistory {
+        public File getHistoryFile() {
+            return file;
+        }
+
+        public synchronized void load() {
+            try {
+                InputStream in = new BufferedInputStream(new FileInputStream(file));
+                load(in);
+                in.close();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        public synchronized void load(InputStream in) throws ParserConfigurationException, org.xml.sax.SAXException, IOException {
+            if (!useDOM) {
+                super.load(in);
+                return;
+            }
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            DocumentBuilder db = dbf.newDocumentBuilder();
+            Document d = db.parse(in);
+            NodeList nl = d.getDocumentElement().getElementsByTagName(getEntryTagName());
+            for (int i = 0; i < nl.getLength(); i++) {
+                Record entry = loadUserEntry((Element)nl.item(i));
+                if (entry != null && entry.isLoaded()) {
+                    addEntry(entry);
+                }
+            }
+        }
+    }
+
+    private static void writeDiary(int years, int perDay) throws IOException {
+        List foods = Datasources.getUSDAFoods().getAllFoods();
+        Random rand = new Random(42);
+        PrintStream out = new PrintStream(new BufferedOutputStream(new FileOutputStream(file)));
+        out.println("<servings>");
+        long start = System.currentTimeMillis() - years * 365 * DAY;
+        for (int day = 0; day < years * 365; day++) {
+            for (int i = 0; i < perDay; i++) {
+                FoodProxy fp = (FoodProxy)foods.get(rand.nextInt(foods.size()));
+                out.println("<serving source=\"" + fp.getSource().getName()
+                            + "\" food=\"" + fp.getSourceID()
+                            + "\" date=\"" + (start + day * DAY + i * 60000L)
+                            + "\" grams=\"" + (10 + rand.nextInt(300))
+                            + "\" meal=\"" + (i % 4) + "\" />");
+            }
+        }
+        out.println("</servings>");
+        out.close();
+    }
+
+    private static void run(String name) {
+        long bestTime = Long.MAX_VALUE;
+        long bestPeak = Long.MAX_VALUE;
+        int count = 0;
+        List pools = ManagementFactory.getMemoryPoolMXBeans();
+        for (int r = 0; r < RUNS; r++) {
+            System.gc();
+            long base = 0;
+            for (int i = 0; i < pools.size(); i++) {
+                MemoryPoolMXBean pool = (MemoryPoolMXBean)pools.get(i);
+                if (pool.getType() == MemoryType.HEAP) {
+                    pool.resetPeakUsage();
+                    base += pool.getUsage().getUsed();
+                }
+            }
+            long start = System.nanoTime();
+            History history = new BenchmarkHistory();
+            long time = System.nanoTime() - start;
+            long peak = 0;
+            for (int i = 0; i < pools.size(); i++) {
+                MemoryPoolMXBean pool = (MemoryPoolMXBean)pools.get(i);
+                if (pool.getType() == MemoryType.HEAP) {
+                    peak += pool.getPeakUsage().getUsed();
+                }
+            }
+            count = history.getEntries().size();
+            bestTime = Math.min(bestTime, time);
+            bestPeak = Math.min(bestPeak, peak - base);
+        }
+        System.out.println(name + ": " + count + " entries in " + (bestTime / 1000000)
+                           + " msec, peak heap +" + (bestPeak / (1024 * 1024)) + " MB");
+    }
+
+    public static void main(String[] args) throws Exception {
+        int years = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int perDay = args.length > 1 ? Integer.parseInt(args[1]) : 15;
+        Datasources.initialize(null);
+        file = File.createTempFile("servings", ".xml");
+        file.deleteOnExit();
+        writeDiary(years, perDay);
+        System.out.println("Diary of " + years + " years: " + (file.length() / 1024) + " KB");
+        useDOM = true;
+        run("DOM");
+        useDOM = false;
+        run("SAX");
+        System.exit(0);
+    }
+}
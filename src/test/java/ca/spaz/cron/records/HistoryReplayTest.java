@@ -0,0 +1,90 @@
+package ca.spaz.cron.records;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+
+import org.junit.jupiter.api.Test;
+
+import ca.spaz.cron.metrics.BiometricsHistory;
+import ca.spaz.cron.metrics.Metric;
+
+/**
+ * Checks that journaled edits survive a save that crashed part way through
+ * writing the changed months.
+ */
+public class HistoryReplayTest {
+
+    private static BiometricsHistory open(final File dir) {
+        return new BiometricsHistory() {
+            public File getHistoryFile() {
+                return new File(dir, "metrics.xml");
+            }
+
+            public File getPartitionDirectory() {
+                return new File(dir, "metrics");
+            }
+        };
+    }
+
+    private static Date date(int year, int month, int day) {
+        Calendar c = Calendar.getInstance();
+        c.clear();
+        c.set(year, month, day, 12, 0);
+        return c.getTime();
+    }
+
+    private static Metric metric(Date d, double value) {
+        Metric m = new Metric("Weight", d);
+        m.setValue(Double.valueOf(value));
+        return m;
+    }
+
+    private static void copyDirectory(File from, File to) throws IOException {
+        to.mkdirs();
+        File[] files = from.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            Files.copy(files[i].toPath(), new File(to, files[i].getName()).toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * An entry moved from January to March, where the save wrote January
+     * but crashed before writing March or the manifest.
+     */
+    @Test
+    public void testReplayMoveAfterSourceMonthSaved() throws IOException {
+        File dir = Files.createTempDirectory("history").toFile();
+        File crashed = Files.createTempDirectory("history-crashed").toFile();
+
+        BiometricsHistory h = open(dir);
+        Metric stays = metric(date(2020, Calendar.JANUARY, 10), 70);
+        Metric moves = metric(date(2020, Calendar.JANUARY, 20), 71);
+        h.addMetric(stays);
+        h.addMetric(moves);
+        h.save();
+
+        moves.setDate(date(2020, Calendar.MARCH, 5));
+        h.update(moves);
+        File metrics = h.getPartitionDirectory();
+        copyDirectory(metrics, new File(crashed, "metrics"));
+
+        h.save();
+        Files.copy(new File(metrics, "2020-01.xml").toPath(),
+                   new File(crashed, "metrics/2020-01.xml").toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+
+        List found = open(crashed).getMetricsOfType("Weight");
+        assertEquals(2, found.size());
+        assertEquals(date(2020, Calendar.JANUARY, 10), ((Metric)found.get(0)).getDate());
+        assertEquals(date(2020, Calendar.MARCH, 5), ((Metric)found.get(1)).getDate());
+        assertEquals(71, ((Metric)found.get(1)).getValue().doubleValue(), 0);
+
+        // the replayed edits were saved, so reopening finds them again
+        assertEquals(2, open(crashed).getMetricsOfType("Weight").size());
+    }
+}